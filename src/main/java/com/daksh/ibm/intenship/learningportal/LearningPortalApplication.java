@@ -54,7 +54,7 @@ public class LearningPortalApplication {
 					.subscribe(System.out::println);
 
 
-			Flux<Course> courseFlux = Flux.just(course).flatMap(courseRepository::save);
+			Flux<Course> courseFlux = Flux.just(course).flatMap(courseRepository::saveCourse);
 
 			courseFlux
 					.thenMany(courseRepository.findAll())
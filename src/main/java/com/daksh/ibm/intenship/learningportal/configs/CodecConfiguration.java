@@ -0,0 +1,38 @@
+package com.daksh.ibm.intenship.learningportal.configs;
+
+import com.daksh.ibm.intenship.learningportal.utils.Pagination;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+import java.util.Arrays;
+
+@Configuration
+public class CodecConfiguration {
+
+    /**
+     * Adds application/x-ndjson to the Jackson codecs, which write each element
+     * of a Flux on its own line and flush it as soon as it is encoded. Runs after
+     * the customizer Spring Boot configures the Jackson codecs with
+     * @param objectMapper
+     * @return CodecCustomizer
+     */
+    @Bean
+    @Order(1)
+    public CodecCustomizer ndjsonCodecCustomizer(ObjectMapper objectMapper) {
+        MediaType[] mediaTypes = {MediaType.APPLICATION_JSON, new MediaType("application", "*+json"),
+                Pagination.APPLICATION_NDJSON};
+        return configurer -> {
+            Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(objectMapper, mediaTypes);
+            encoder.setStreamingMediaTypes(Arrays.asList(Pagination.APPLICATION_NDJSON,
+                    MediaType.APPLICATION_STREAM_JSON));
+            configurer.defaultCodecs().jackson2JsonEncoder(encoder);
+            configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper, mediaTypes));
+        };
+    }
+}
@@ -12,6 +12,7 @@ import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
 import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.utils.StringUtils;
 
 import java.time.Duration;
@@ -42,6 +43,15 @@ public class S3ClientConfiguration {
         return s3AsyncClientBuilder.build();
     }
 
+    @Bean
+    public S3Presigner s3Presigner(S3ClientConfigurationProperties s3props,
+                                   AwsCredentialsProvider credentialsProvider) {
+        return S3Presigner.builder()
+                .region(s3props.getRegion())
+                .credentialsProvider(credentialsProvider)
+                .build();
+    }
+
     @Bean
     public AwsCredentialsProvider awsCredentialsProvider(S3ClientConfigurationProperties s3props) {
         if (StringUtils.isBlank(s3props.getAccessKeyId())) {
@@ -0,0 +1,27 @@
+package com.daksh.ibm.intenship.learningportal.controllers;
+
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+    private final CatalogCache catalogCache;
+
+    public CacheController(CatalogCache catalogCache) {
+        this.catalogCache = catalogCache;
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the course and category caches
+     * @return statistics keyed by cache name
+     */
+    @GetMapping("stats")
+    public Map<String, Map<String, Number>> getStats() {
+        return catalogCache.stats();
+    }
+}
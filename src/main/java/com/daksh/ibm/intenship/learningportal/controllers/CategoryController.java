@@ -2,33 +2,72 @@ package com.daksh.ibm.intenship.learningportal.controllers;
 
 import com.daksh.ibm.intenship.learningportal.model.Category;
 import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.CourseView;
 import com.daksh.ibm.intenship.learningportal.repository.CategoryRepository;
 import com.daksh.ibm.intenship.learningportal.repository.CourseRepository;
+import com.daksh.ibm.intenship.learningportal.repository.LectureRepository;
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import com.daksh.ibm.intenship.learningportal.utils.Keyset;
+import com.daksh.ibm.intenship.learningportal.utils.LectureContent;
+import com.daksh.ibm.intenship.learningportal.utils.Pagination;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @RestController
 @RequestMapping("/categories")
 public class CategoryController {
+    private static final Keyset<Category> SORT_KEYS = new Keyset<>(Category::getId)
+            .key("name", String.class, Category::getName);
 
     private CategoryRepository repository;
     private CourseRepository courseRepository;
+    private LectureRepository lectureRepository;
+    private Pagination pagination;
+    private ReactiveMongoTemplate mongoTemplate;
+    private CatalogCache catalogCache;
+    private LectureContent lectureContent;
 
-    public CategoryController(CategoryRepository repository, CourseRepository courseRepository) {
+    public CategoryController(CategoryRepository repository, CourseRepository courseRepository,
+                              LectureRepository lectureRepository, Pagination pagination,
+                              ReactiveMongoTemplate mongoTemplate, CatalogCache catalogCache,
+                              LectureContent lectureContent) {
         this.repository = repository;
         this.courseRepository = courseRepository;
+        this.lectureRepository = lectureRepository;
+        this.pagination = pagination;
+        this.mongoTemplate = mongoTemplate;
+        this.catalogCache = catalogCache;
+        this.lectureContent = lectureContent;
     }
 
     /**
-     * Returns categories stored in the CategoryRepository as a Flux
-     * @return Flux of Category
+     * Returns a page of the categories stored in the CategoryRepository, or
+     * streams them as application/x-ndjson
+     * @param sort id or name, prefixed by '-' for descending order
+     * @param after cursor from the Link header of the previous page
+     * @param limit page size
+     * @param request
+     * @return Mono of ResponseEntity containing the categories
      */
     @GetMapping
-    public Flux<Category> getAllCategories() {
-        return repository.findAll();
+    public Mono<ResponseEntity<Flux<?>>> getAllCategories(@RequestParam(defaultValue = "id") String sort,
+                                                          @RequestParam(required = false) String after,
+                                                          @RequestParam(required = false) Integer limit,
+                                                          ServerHttpRequest request) {
+        return pagination.list(request, SORT_KEYS, Category.class, null, sort, after, limit, null,
+                categories -> categories);
     }
 
     /**
@@ -39,7 +78,7 @@ public class CategoryController {
      */
     @GetMapping("{id}")
     public Mono<ResponseEntity<Category>> getCategory(@PathVariable String id) {
-        return repository.findById(id)
+        return catalogCache.findCategory(id)
                 .map(category -> ResponseEntity.ok(category))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
@@ -52,7 +91,16 @@ public class CategoryController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<Category> saveCategory(@RequestBody Category category) {
-        return repository.save(category);
+        if (category.getId() == null)
+            return repository.save(category);
+
+        // Courses may already list the category
+        return mongoTemplate.count(query(where("categories").is(category.getId())), Course.class)
+                .flatMap(courseCount -> {
+                    category.setCourseCount(courseCount);
+                    return repository.save(category);
+                })
+                .doOnSuccess(savedCategory -> catalogCache.evictCategory(category.getId()));
     }
 
     /**
@@ -64,18 +112,18 @@ public class CategoryController {
     @PutMapping("{id}")
     public Mono<ResponseEntity<Category>> updateCategory(@PathVariable String id,
                                                         @RequestBody Category category) {
-        return repository.findById(id)
-                .flatMap(existingCategory ->
-                        repository.save(new Category(existingCategory.getId(),
-                                category.getName(),
-                                category.getCourseList())))
+        return mongoTemplate.findAndModify(query(where("_id").is(id)),
+                new Update().set("name", category.getName()),
+                FindAndModifyOptions.options().returnNew(true),
+                Category.class)
+                .doOnSuccess(updateProduct -> catalogCache.evictCategory(id))
                 .map(updateProduct -> ResponseEntity.ok(updateProduct))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
 
     /**
-     * Deletes a category corresponding to the id
+     * Deletes a category corresponding to the id, and removes it from its courses
      * @param id
      * @return Mono of ResponseEntity<Void>
      */
@@ -84,43 +132,63 @@ public class CategoryController {
         return repository.findById(id)
                 .flatMap(existingCategory ->
                         repository.delete(existingCategory)
+                                .then(mongoTemplate.updateMulti(query(where("categories").is(id)),
+                                        new Update().pull("categories", id), Course.class))
+                                .doOnSuccess(result -> catalogCache.evictAll())
                                 .then(Mono.just(ResponseEntity.ok().<Void>build())))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
-     * Adds a course to the CourseRepository associated with Category corresponding to the id
+     * Adds a course to the CourseRepository associated with Category corresponding to the id.
+     * Content entries of its lectures must name uploaded content
      * @param id
      * @param course
-     * @return Mono of Void ResponseEntity
+     * @return Mono of Void ResponseEntity, or 400 if a content entry is unknown
      */
     @PostMapping("{id}/courses")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<ResponseEntity<Category>> addCourse(@PathVariable String id, @RequestBody Course course) {
-        return repository.findById(id)
-                .flatMap(category -> {
-                    course.getCategories().add(category.getId());
-                    return courseRepository.save(course)
-                            .flatMap(savedCourse -> {
-                                category.getCourseList().add(savedCourse.getId());
-                                return repository.save(category)
-                                .map(updatedCategory -> ResponseEntity.ok(updatedCategory));
-                            });
+        return catalogCache.categoryExists(id)
+                .filter(Boolean::booleanValue)
+                .flatMap(exists -> {
+                    if (course.getCategories() == null)
+                        course.setCategories(new ArrayList<>());
+                    if (!course.getCategories().contains(id))
+                        course.getCategories().add(id);
+                    return lectureContent.save(course, courseRepository.saveCourse(course))
+                            .then(catalogCache.findCategory(id));
                 })
+                .map(updatedCategory -> ResponseEntity.ok(updatedCategory))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
 
     /**
-     * List all courses containing repository
+     * Returns a page of the courses listing the category, or streams them as
+     * application/x-ndjson
      * @param id
-     * @return Flux of course
+     * @param sort id, name, createdDate or price, prefixed by '-' for descending order
+     * @param after cursor from the Link header of the previous page
+     * @param limit page size
+     * @param view summary, or detail for whole courses with their lectures
+     * @param request
+     * @return Mono of ResponseEntity containing the courses
      */
     @GetMapping("{id}/courses")
-    public Flux<Course> getCourses(@PathVariable String id) {
-        return repository.findById(id)
-                .map(category -> category.getCourseList())
-                .flux()
-                .flatMap(list -> courseRepository.findAllById(list));
+    public Mono<ResponseEntity<Flux<?>>> getCourses(@PathVariable String id,
+                                                    @RequestParam(defaultValue = "id") String sort,
+                                                    @RequestParam(required = false) String after,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestParam(defaultValue = "detail") String view,
+                                                    ServerHttpRequest request) {
+        return CourseView.of(view)
+                .map(courseView -> catalogCache.categoryExists(id)
+                        .flatMap(exists -> exists
+                                ? pagination.list(request, CourseController.SORT_KEYS, Course.class,
+                                        where("categories").is(id), sort, after, limit, courseView.fields(),
+                                        courses -> lectureRepository.view(courses, courseView))
+                                : Mono.just(ResponseEntity.notFound().<Flux<?>>build())))
+                .orElse(Mono.just(ResponseEntity.badRequest().build()));
     }
 }
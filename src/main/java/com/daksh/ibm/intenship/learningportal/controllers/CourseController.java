@@ -1,97 +1,243 @@
 package com.daksh.ibm.intenship.learningportal.controllers;
 
+import com.daksh.ibm.intenship.learningportal.model.BulkResult;
 import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.CourseView;
 import com.daksh.ibm.intenship.learningportal.model.Lecture;
 import com.daksh.ibm.intenship.learningportal.repository.CourseRepository;
+import com.daksh.ibm.intenship.learningportal.repository.LectureRepository;
+import com.daksh.ibm.intenship.learningportal.utils.BulkUtility;
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import com.daksh.ibm.intenship.learningportal.utils.DeletionQueue;
+import com.daksh.ibm.intenship.learningportal.utils.Keyset;
+import com.daksh.ibm.intenship.learningportal.utils.LectureContent;
+import com.daksh.ibm.intenship.learningportal.utils.Pagination;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @RestController
 @RequestMapping("/courses")
 public class CourseController {
+    static final Keyset<Course> SORT_KEYS = new Keyset<>(Course::getId)
+            .key("name", String.class, Course::getName)
+            .key("createdDate", Date.class, Course::getCreatedDate)
+            .key("price", Double.class, Course::getPrice);
+
     private final CourseRepository repository;
+    private final LectureRepository lectureRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Pagination pagination;
+    private final BulkUtility bulkUtility;
+    private final CatalogCache catalogCache;
+    private final DeletionQueue deletionQueue;
+    private final LectureContent lectureContent;
 
-    public CourseController(CourseRepository repository) {
+    public CourseController(CourseRepository repository, LectureRepository lectureRepository,
+                            ReactiveMongoTemplate mongoTemplate, Pagination pagination, BulkUtility bulkUtility,
+                            CatalogCache catalogCache, DeletionQueue deletionQueue, LectureContent lectureContent) {
         this.repository = repository;
+        this.lectureRepository = lectureRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.pagination = pagination;
+        this.bulkUtility = bulkUtility;
+        this.catalogCache = catalogCache;
+        this.deletionQueue = deletionQueue;
+        this.lectureContent = lectureContent;
     }
 
     /**
-     * Returns all the courses saved inside the CourseRepository
-     * @return Flux of Course
+     * Returns a page of the courses saved inside the CourseRepository, or streams
+     * them as application/x-ndjson. The filters are combined into one query, served
+     * by the compound indexes of Course
+     * @param category only courses in this category
+     * @param minPrice only courses priced at least this
+     * @param maxPrice only courses priced at most this
+     * @param createdAfter only courses created after this ISO date-time
+     * @param createdBefore only courses created before this ISO date-time
+     * @param sort id, name, createdDate or price, prefixed by '-' for descending order
+     * @param after cursor from the Link header of the previous page
+     * @param limit page size
+     * @param view summary, or detail for whole courses with their lectures
+     * @param explain return the query plan and execution statistics instead of the courses
+     * @param request
+     * @return Mono of ResponseEntity containing the courses
      */
     @GetMapping
-    public Flux<Course> getAllCourses() {
-        return repository.findAll();
+    public Mono<ResponseEntity<?>> getAllCourses(@RequestParam(required = false) String category,
+                                                 @RequestParam(required = false) Double minPrice,
+                                                 @RequestParam(required = false) Double maxPrice,
+                                                 @RequestParam(required = false)
+                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date createdAfter,
+                                                 @RequestParam(required = false)
+                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date createdBefore,
+                                                 @RequestParam(defaultValue = "id") String sort,
+                                                 @RequestParam(required = false) String after,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(defaultValue = "detail") String view,
+                                                 @RequestParam(defaultValue = "false") boolean explain,
+                                                 ServerHttpRequest request) {
+        Criteria filter = filter(category, minPrice, maxPrice, createdAfter, createdBefore);
+        return CourseView.of(view)
+                .map(courseView -> explain
+                        ? pagination.explain(request, SORT_KEYS, Course.class, filter, sort, after, limit,
+                                courseView.fields())
+                                .<ResponseEntity<?>>map(response -> response)
+                        : pagination.list(request, SORT_KEYS, Course.class, filter, sort, after, limit,
+                                courseView.fields(), courses -> lectureRepository.view(courses, courseView))
+                                .<ResponseEntity<?>>map(response -> response))
+                .orElse(Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    private static Criteria filter(String category, Double minPrice, Double maxPrice,
+                                   Date createdAfter, Date createdBefore) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (category != null)
+            criteria.add(where("categories").is(category));
+        if (minPrice != null || maxPrice != null) {
+            Criteria price = where("price");
+            if (minPrice != null)
+                price.gte(minPrice);
+            if (maxPrice != null)
+                price.lte(maxPrice);
+            criteria.add(price);
+        }
+        if (createdAfter != null || createdBefore != null) {
+            Criteria createdDate = where("createdDate");
+            if (createdAfter != null)
+                createdDate.gt(createdAfter);
+            if (createdBefore != null)
+                createdDate.lt(createdBefore);
+            criteria.add(createdDate);
+        }
+        if (criteria.isEmpty())
+            return null;
+        return criteria.size() == 1 ? criteria.get(0) : new Criteria().andOperator(criteria.toArray(new Criteria[0]));
     }
 
     /**
      * Returns Course corresponding to id
      * @param id
+     * @param view summary, or detail for the whole course with its lectures
      * @return Mono of ResponseEntity containing the course
      */
     @GetMapping("{id}")
-    public Mono<ResponseEntity<Course>> getCourse(@PathVariable String id) {
-        return repository.findById(id)
-                .map(course -> ResponseEntity.ok(course))
-                .defaultIfEmpty(ResponseEntity.notFound().build());
+    public Mono<ResponseEntity<?>> getCourse(@PathVariable String id,
+                                             @RequestParam(defaultValue = "detail") String view) {
+        return CourseView.of(view)
+                .<Mono<ResponseEntity<?>>>map(courseView -> lectureRepository
+                        .view(catalogCache.findCourse(id).flux(), courseView)
+                        .next()
+                        .<ResponseEntity<?>>map(ResponseEntity::ok)
+                        .defaultIfEmpty(ResponseEntity.notFound().build()))
+                .orElse(Mono.just(ResponseEntity.badRequest().build()));
     }
 
     /**
-     * Saves the course inside the CourseRepository
+     * Saves the course inside the CourseRepository. Content entries of its
+     * lectures must name uploaded content, which they take a reference to
      * @param course
-     * @return Mono of the course saved
+     * @return Mono of the course saved, or 400 if a content entry is unknown
      */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<Course> saveCourse(@RequestBody Course course) {
-        return repository.save(course);
+        return lectureContent.save(course, repository.saveCourse(course));
     }
 
     /**
-     * Updates a course corresponding to the id
+     * Inserts the courses of an application/x-ndjson body, one per line, each
+     * with its lectures. Records that cannot be inserted are reported without
+     * stopping the import
+     * @param request
+     * @return ResponseEntity streaming one BulkResult per batch as application/x-ndjson
+     */
+    @PostMapping(value = "bulk", consumes = "application/x-ndjson")
+    public ResponseEntity<Flux<BulkResult>> importCourses(ServerHttpRequest request) {
+        return ResponseEntity.ok()
+                .contentType(Pagination.APPLICATION_NDJSON)
+                .body(bulkUtility.importCourses(request.getBody()));
+    }
+
+    /**
+     * Streams all courses with their lectures as application/x-ndjson, in the
+     * format taken by the bulk import
+     * @return ResponseEntity streaming the courses
+     */
+    @GetMapping("export")
+    public ResponseEntity<Flux<Course>> exportCourses() {
+        Flux<Course> courses = mongoTemplate.find(new Query().with(Sort.by("_id")), Course.class);
+        return ResponseEntity.ok()
+                .contentType(Pagination.APPLICATION_NDJSON)
+                .body(lectureRepository.withLectures(courses));
+    }
+
+    /**
+     * Updates a course corresponding to the id, replacing its lectures by key and
+     * deleting only the ones left out. Content the new lectures no longer hold is
+     * queued for deletion from S3, and entries new to the course must name
+     * uploaded content
      * @param id
      * @param course
-     * @return Mono of ResponseEntity containing the updated course
+     * @return Mono of ResponseEntity containing the updated course, or 400 if a
+     * new content entry is unknown
      */
     @PutMapping("{id}")
     public Mono<ResponseEntity<Course>> updateCourse(@PathVariable String id,
                                                      @RequestBody Course course) {
         return repository.findById(id)
                 .flatMap(existingCourse -> {
-                    existingCourse.setName(course.getId());
+                    existingCourse.setName(course.getName());
                     existingCourse.setPrice(course.getPrice());
                     existingCourse.setLectures(course.getLectures());
                     existingCourse.setDescription(course.getDescription());
                     existingCourse.setCreatedDate(course.getCreatedDate());
                     existingCourse.setCategories(course.getCategories());
-                    return repository.save(existingCourse); })
+                    return lectureContent.save(existingCourse, repository.saveCourse(existingCourse)); })
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
-     * Deletes the course corresponding to the id from the CourseRepository
+     * Deletes the course corresponding to the id from the CourseRepository. The
+     * content of its lectures is queued for deletion from S3
      * @param id
      * @return Mono of ResponseEntity<Void> containing the response of the request
      */
     @DeleteMapping("{id}")
     public Mono<ResponseEntity<Void>> deleteCourse(@PathVariable String id) {
-        return repository.findById(id)
-                .flatMap(course -> repository.delete(course)
-                        .then(Mono.just(ResponseEntity.ok().<Void>build())))
+        return repository.deleteCourse(id)
+                .flatMap(course -> deleteLectures(id)
+                        .thenReturn(ResponseEntity.ok().<Void>build()))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
-     * deletes all courses stored inside the CourseRepository
+     * deletes all courses stored inside the CourseRepository. The content of
+     * their lectures is queued for deletion from S3
      * @return Mono<Void> signalling successful execution
      */
     @DeleteMapping
     public Mono<Void> deleteAll() {
-        return repository.deleteAll();
+        return repository.deleteAllCourses()
+                .then(deletionQueue.release(lectureRepository.removeAllLectures()));
     }
 
     /**
@@ -101,31 +247,59 @@ public class CourseController {
      */
     @GetMapping("{id}/lectures")
     public Flux<Lecture> getAllLectures(@PathVariable String id) {
-        return repository.findById(id)
-                .map(course -> course.getLectures().values())
-                .flux()
-                .flatMap(collection -> Flux.fromIterable(collection));
+        return lectureRepository.findByCourseId(id);
     }
 
     /**
      * saves lecture inside course and updates course in the CourseRepository
      * @param id
      * @param lecture
-     * @return Mono of ResponseEntity containing the updated course as body
+     * @return Mono of ResponseEntity containing the updated course as body, or
+     * 400 if a content entry of the lecture is unknown
      */
     @PostMapping("{id}/lectures")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<ResponseEntity<Course>> saveLecture(@PathVariable String id,
                                                     @RequestBody Lecture lecture)  {
-        return repository.findById(id)
+        // Take the next lecture id from the course counter, then insert the lecture
+        // under it. Saving a course moves the counter past its lectures, so the id
+        // is not in use
+        return mongoTemplate.findAndModify(query(where("_id").is(id)),
+                new Update().inc("count", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                Course.class)
+                .doOnSuccess(course -> catalogCache.evictCourse(id))
                 .flatMap(course -> {
-                    course.addLecture(lecture);
-                    return repository.save(course)
-                            .then(Mono.just(ResponseEntity.ok(course)));
+                    lecture.assign(id, Integer.toString(course.getCount() - 1));
+                    List<String> fileKeys = LectureContent.fileKeys(lecture);
+                    return lectureContent.acquire(fileKeys)
+                            .then(lectureRepository.insert(lecture)
+                                    .onErrorResume(error -> lectureContent.giveBack(fileKeys).then(Mono.error(error))))
+                            .then(lectureRepository.withLectures(course));
                 })
+                .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Inserts the lectures of an application/x-ndjson body into the course,
+     * giving them the next lecture ids. Records that cannot be inserted are
+     * reported without stopping the import
+     * @param id
+     * @param request
+     * @return Mono of ResponseEntity streaming one BulkResult per batch as application/x-ndjson
+     */
+    @PostMapping(value = "{id}/lectures/bulk", consumes = "application/x-ndjson")
+    public Mono<ResponseEntity<Flux<BulkResult>>> importLectures(@PathVariable String id,
+                                                                 ServerHttpRequest request) {
+        return catalogCache.courseExists(id)
+                .map(exists -> exists
+                        ? ResponseEntity.ok()
+                                .contentType(Pagination.APPLICATION_NDJSON)
+                                .body(bulkUtility.importLectures(id, request.getBody()))
+                        : ResponseEntity.notFound().build());
+    }
+
     /**
      * Delets all lectures from the course with the id specified
      * @param id
@@ -133,12 +307,20 @@ public class CourseController {
      */
     @DeleteMapping("{id}/lectures")
     public Mono<ResponseEntity<Void>> deleteAll(@PathVariable String id) {
-        return repository.findById(id)
-                .flatMap(course -> {
-                    course.getLectures().clear();
-                    return repository.save(course)
-                            .then(Mono.just(ResponseEntity.ok().<Void>build()));
-                }).defaultIfEmpty(ResponseEntity.notFound().build());
+        return catalogCache.findCourse(id)
+                .flatMap(course -> deleteLectures(id)
+                        .then(Mono.just(ResponseEntity.ok().<Void>build())))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Deletes the lectures of the course, releasing their content as each
+     * lecture is removed
+     * @param id
+     * @return Mono signalling completion, once the unreferenced objects are queued
+     */
+    private Mono<Void> deleteLectures(String id) {
+        return deletionQueue.release(lectureRepository.removeByCourseId(id));
     }
 
 }
@@ -1,10 +1,16 @@
 package com.daksh.ibm.intenship.learningportal.controllers;
 
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
 import com.daksh.ibm.intenship.learningportal.model.Lecture;
 import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
-import com.daksh.ibm.intenship.learningportal.repository.CourseRepository;
+import com.daksh.ibm.intenship.learningportal.repository.LectureRepository;
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import com.daksh.ibm.intenship.learningportal.utils.DeletionQueue;
 import com.daksh.ibm.intenship.learningportal.utils.DownloadUtility;
+import com.daksh.ibm.intenship.learningportal.utils.PresignUtility;
 import com.daksh.ibm.intenship.learningportal.utils.UploadUtility;
+import com.daksh.ibm.intenship.learningportal.utils.UploadUtility.SavedFile;
+import com.daksh.ibm.intenship.learningportal.utils.Utility;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.http.HttpHeaders;
@@ -24,13 +30,14 @@ import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.transform.DeleteObjectsRequestMarshaller;
+import software.amazon.awssdk.utils.BinaryUtils;
 
 import javax.swing.text.html.Option;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.daksh.ibm.intenship.learningportal.utils.DownloadUtility.FluxResponseProvider;
 import static com.daksh.ibm.intenship.learningportal.utils.UploadUtility.checkResult;
 
 @RestController
@@ -39,16 +46,25 @@ import static com.daksh.ibm.intenship.learningportal.utils.UploadUtility.checkRe
 @Slf4j
 public class LectureController {
 
-    private final CourseRepository courseRepository;
+    private final CatalogCache catalogCache;
+    private final LectureRepository lectureRepository;
     private final S3AsyncClient s3AsyncClient;
     private final S3ClientConfigurationProperties s3props;
     private final UploadUtility uploadUtility;
+    private final DownloadUtility downloadUtility;
 
-    public LectureController(CourseRepository courseRepository, S3AsyncClient s3AsyncClient, S3ClientConfigurationProperties s3props, UploadUtility uploadUtility) {
-        this.courseRepository = courseRepository;
+    private final PresignUtility presignUtility;
+    private final DeletionQueue deletionQueue;
+
+    public LectureController(CatalogCache catalogCache, LectureRepository lectureRepository, S3AsyncClient s3AsyncClient, S3ClientConfigurationProperties s3props, UploadUtility uploadUtility, DownloadUtility downloadUtility, PresignUtility presignUtility, DeletionQueue deletionQueue) {
+        this.catalogCache = catalogCache;
+        this.lectureRepository = lectureRepository;
         this.s3AsyncClient = s3AsyncClient;
         this.s3props = s3props;
         this.uploadUtility = uploadUtility;
+        this.downloadUtility = downloadUtility;
+        this.presignUtility = presignUtility;
+        this.deletionQueue = deletionQueue;
     }
 
     /**
@@ -60,17 +76,14 @@ public class LectureController {
     @GetMapping
     public Mono<ResponseEntity<?>> getLecture(@PathVariable String id,
                                               @PathVariable String lectureId) {
-        return courseRepository.findById(id)
-                .map(course -> {
-                    if (course.getLectures().containsKey(lectureId))
-                        return ResponseEntity.ok(course.getLecture(lectureId));
-                    else
-                        return ResponseEntity.notFound().build();
-                }).defaultIfEmpty(ResponseEntity.notFound().build());
+        return lectureRepository.findByCourseIdAndLectureId(id, lectureId)
+                .<ResponseEntity<?>>map(lecture -> ResponseEntity.ok(lecture))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
-     * Deletes Lecture corresponding to the lectureId
+     * Deletes Lecture corresponding to the lectureId. Its content is queued for
+     * deletion from S3
      * @param id
      * @param lectureId
      * @return Mono of ResponseEntity indicating the result of the request
@@ -78,40 +91,29 @@ public class LectureController {
     @DeleteMapping
     public Mono<ResponseEntity<?>> deleteLecture(@PathVariable String id,
                                                  @PathVariable String lectureId) {
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (course.getLectures().containsKey(lectureId)) {
-                        course.getLectures().remove(lectureId);
-                        return deleteAllContent(id, lectureId).then(Mono.from(
-                                courseRepository.save(course)
-                                .thenReturn(ResponseEntity.ok().<Void>build())));
-                    } else {
-                        return Mono.just(ResponseEntity.notFound().build());
-                    }
-                }).defaultIfEmpty(ResponseEntity.notFound().build());
+        // The content is released as it was when the lecture was removed, so
+        // entries removed by a concurrent request are not released again
+        return lectureRepository.removeLecture(id, lectureId)
+                .flatMap(lecture -> release(lecture.getContentUrls().keySet())
+                        .<ResponseEntity<?>>thenReturn(ResponseEntity.ok().<Void>build()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
-     * Updates lecture corresponding to the lectureId
+     * Updates the name, description and duration of the lecture corresponding to
+     * the lectureId. Its content is changed through the content endpoints only
      * @param id
      * @param lectureId
      * @param lecture
-     * @return Mono of ResponseEntity containing the result of the request
+     * @return Mono of ResponseEntity containing the updated lecture
      */
     @PutMapping
     public Mono<ResponseEntity<?>> updateLecture(@PathVariable String id,
                                                  @PathVariable String lectureId,
                                                  @RequestBody Lecture lecture) {
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (course.getLectures().containsKey(lectureId)) {
-                        course.putLecture(lectureId, lecture);
-                        return courseRepository.save(course)
-                                .then(Mono.just(ResponseEntity.ok(lecture)));
-                    } else {
-                        return Mono.just(ResponseEntity.notFound().build());
-                    }
-                }).defaultIfEmpty(ResponseEntity.notFound().build());
+        return lectureRepository.updateDetails(id, lectureId, lecture)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     /**
@@ -135,46 +137,45 @@ public class LectureController {
                     Optional.of("required header missing: Content-length"));
         }
 
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (!(course.getLectures().containsKey(lectureId))) {
-                        return Mono.just(ResponseEntity
-                                .status(HttpStatus.NOT_FOUND)
-                                .body("Lecture: " + lectureId + " not found!"));
-                    }
-
-                    final Lecture lecture = course.getLecture(lectureId);
-
+        return lectureRepository.existsById(Lecture.key(id, lectureId))
+                .filter(Boolean::booleanValue)
+                .<ResponseEntity<?>>flatMap(exists -> {
                     String fileKey = UUID.randomUUID().toString();
                     MediaType mediaType = headers.getContentType();
 
                     if (mediaType == null)
                         mediaType = MediaType.APPLICATION_OCTET_STREAM;
+                    final String contentType = mediaType.toString();
+
+                    // Hash the content while it streams to S3, for deduplication
+                    final MessageDigest digest = Utility.sha256();
 
-                    return Mono.fromFuture(s3AsyncClient
-                            .putObject(PutObjectRequest.builder()
-                                    .bucket(s3props.getBucket())
-                                    .contentLength(headers.getContentLength())
-                                    .key(fileKey.toString())
-                                    .contentType(mediaType.toString())
-                                    .acl(ObjectCannedACL.PUBLIC_READ_WRITE)
-                                    .build(), AsyncRequestBody.fromPublisher(body)))
+                    final PutObjectRequest request = PutObjectRequest.builder()
+                            .bucket(s3props.getBucket())
+                            .contentLength(headers.getContentLength())
+                            .key(fileKey.toString())
+                            .contentType(contentType)
+                            .acl(ObjectCannedACL.PUBLIC_READ_WRITE)
+                            .build();
+
+                    Mono<SavedFile> savedFile = Mono
+                            .defer(() -> Mono.fromFuture(s3AsyncClient.putObject(request,
+                                    AsyncRequestBody.fromPublisher(body
+                                            .doOnNext(buffer -> digest.update(buffer.duplicate()))))))
                             .flatMap(response -> {
                                 UploadUtility.checkResult(response);
-                                lecture.putContent(fileKey,
-                                        s3props.getUrl() + "/"
-                                        + s3props.getBucket() + "/"
-                                        + fileKey.toString());
-                                course.putLecture(lectureId, lecture);
-                                return courseRepository.save(course)
-                                        .thenReturn(ResponseEntity
-                                                .status(HttpStatus.CREATED)
-                                                .body(new UploadUtility.UploadResult(HttpStatus.CREATED,
-                                                        Arrays.asList(fileKey))));
+                                return uploadUtility.deduplicate(s3props.getBucket(), new SavedFile(fileKey,
+                                        BinaryUtils.toHex(digest.digest()), length, new ContentMetadata(fileKey,
+                                        length, contentType, fileKey, response.eTag(), new Date())));
                             });
-                }).defaultIfEmpty(ResponseEntity
-                        .status(HttpStatus.NOT_FOUND)
-                        .body("Course: " + id + " not found!"));
+
+                    return savedFile
+                            .flatMap(saved -> addContent(id, lectureId, saved))
+                            .map(key -> ResponseEntity
+                                    .status(HttpStatus.CREATED)
+                                    .body(new UploadUtility.UploadResult(HttpStatus.CREATED,
+                                            Arrays.asList(key))));
+                }).switchIfEmpty(Mono.defer(() -> lectureNotFound(id, lectureId)));
     }
 
 
@@ -191,35 +192,17 @@ public class LectureController {
                                                        @PathVariable String lectureId,
                                                        @RequestHeader HttpHeaders headers,
                                                        @RequestBody Flux<Part> parts) {
-       return courseRepository.findById(id)
-               .flatMap(course -> {
-                   if (!(course.getLectures().containsKey(lectureId)))
-                       return Mono.just(ResponseEntity
-                               .status(HttpStatus.NOT_FOUND)
-                               .body("Lecture: " + lectureId + " not found!"));
-
-                   final Lecture lecture = course.getLecture(lectureId);
-                   final Map<String, String> lectureContentMap = lecture.getContentUrls();
-
+       return lectureRepository.existsById(Lecture.key(id, lectureId))
+               .filter(Boolean::booleanValue)
+               .<ResponseEntity<?>>flatMap(exists -> {
                    return parts
                            .ofType(FilePart.class)
                            .flatMap((part) -> uploadUtility.saveFile(headers, s3props.getBucket(), part))
-                           .map(key -> {
-                               lectureContentMap.put(key, s3props.getUrl() +
-                                       "/" + s3props.getBucket() +
-                                       "/" + key);
-                               return key;
-                           })
+                           .concatMap(savedFile -> addContent(id, lectureId, savedFile))
                            .collect(Collectors.toList())
-                           .flatMap((keys) -> {
-                               course.putLecture(lectureId, lecture);
-                               return courseRepository.save(course)
-                                       .thenReturn(ResponseEntity.status(HttpStatus.CREATED)
-                                               .body(new UploadUtility.UploadResult(HttpStatus.CREATED, keys)));
-                           });
-               }).defaultIfEmpty(ResponseEntity
-                       .status(HttpStatus.NOT_FOUND)
-                       .body("Course: " + id + " not found!"));
+                           .map((keys) -> ResponseEntity.status(HttpStatus.CREATED)
+                                   .body(new UploadUtility.UploadResult(HttpStatus.CREATED, keys)));
+               }).switchIfEmpty(Mono.defer(() -> lectureNotFound(id, lectureId)));
     }
 
     /**
@@ -227,44 +210,74 @@ public class LectureController {
      * @param id
      * @param lectureId
      * @param fileKey
-     * @return Mono of ResponseEntity containing a Flux of ByteBuffer of the file to be downloaded
+     * @param headers Range, If-Range, If-None-Match and If-Modified-Since are honored
+     * @return Mono of ResponseEntity containing a Flux of ByteBuffer of the file to be downloaded,
+     * or a redirect to a presigned S3 URL if presigned downloads are enabled
      */
     @GetMapping("/content/{fileKey}")
     public Mono<ResponseEntity<Flux<ByteBuffer>>> downloadFile(@PathVariable String id,
                                                                @PathVariable String lectureId,
-                                                               @PathVariable String fileKey) {
-
-        GetObjectRequest request = GetObjectRequest.builder()
-                .bucket(s3props.getBucket())
-                .key(fileKey)
-                .build();
+                                                               @PathVariable String fileKey,
+                                                               @RequestHeader HttpHeaders headers) {
 
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (!(course.getLectures().containsKey(lectureId)))
-                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Flux.empty()));
+        return lectureRepository.findByCourseIdAndLectureId(id, lectureId)
+                .flatMap(lecture -> {
+                    if (!(lecture.getContentUrls()).containsKey(fileKey))
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Flux.<ByteBuffer>empty()));
+
+                    // Unconditional downloads of content without stored metadata
+                    // need no lookup before the download
+                    ContentMetadata stored = lecture.getContentMetadata(fileKey);
+                    if (stored == null && headers.getIfNoneMatch().isEmpty() && headers.getIfModifiedSince() < 0)
+                        return download(fileKey, headers, null);
+
+                    return contentMetadata(lecture, fileKey)
+                            .flatMap(metadata -> DownloadUtility.notModified(headers, metadata)
+                                    ? Mono.just(DownloadUtility.<Flux<ByteBuffer>>notModifiedResponse(metadata))
+                                    : download(fileKey, headers, metadata));
+                }).defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Flux.empty()));
+    }
 
-                    final Lecture lecture = course.getLecture(lectureId);
+    /**
+     * Returns the headers of the file with the corresponding fileKey. Content
+     * uploaded with its metadata is answered without calling S3.
+     * @param id
+     * @param lectureId
+     * @param fileKey
+     * @param headers If-None-Match and If-Modified-Since are honored
+     * @return Mono of ResponseEntity with the headers of a download of the file
+     */
+    @RequestMapping(value = "/content/{fileKey}", method = RequestMethod.HEAD)
+    public Mono<ResponseEntity<Void>> headFile(@PathVariable String id,
+                                               @PathVariable String lectureId,
+                                               @PathVariable String fileKey,
+                                               @RequestHeader HttpHeaders headers) {
+
+        return lectureRepository.findByCourseIdAndLectureId(id, lectureId)
+                .flatMap(lecture -> {
                     if (!(lecture.getContentUrls()).containsKey(fileKey))
-                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Flux.empty()));
-
-                    return Mono.fromFuture(s3AsyncClient.getObject(request, new FluxResponseProvider()))
-                            .map(response -> {
-                                DownloadUtility.checkResult(response.sdkResponse);
-                                String filename = response.sdkResponse.metadata().getOrDefault("filename", fileKey);
-                                log.info("[I95] filename={}, length={}", filename, response.sdkResponse.contentLength());
-
-                                return ResponseEntity.ok()
-                                        .header(HttpHeaders.CONTENT_TYPE, response.sdkResponse.contentType())
-                                        .header(HttpHeaders.CONTENT_LENGTH, Long.toString(response.sdkResponse.contentLength()))
-                                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                                        .body(response.flux);
-                            });
-                });
+                        return Mono.just(ResponseEntity.notFound().<Void>build());
+
+                    return contentMetadata(lecture, fileKey)
+                            .map(metadata -> DownloadUtility.notModified(headers, metadata)
+                                    ? DownloadUtility.<Void>notModifiedResponse(metadata)
+                                    : DownloadUtility.<Void>headResponse(metadata));
+                }).defaultIfEmpty(ResponseEntity.notFound().<Void>build());
+    }
+
+    private Mono<ResponseEntity<Flux<ByteBuffer>>> download(String fileKey, HttpHeaders headers,
+                                                            ContentMetadata metadata) {
+        return presignUtility.redirect(fileKey, metadata)
+                .map(url -> ResponseEntity.status(HttpStatus.FOUND)
+                        .location(url)
+                        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                        .body(Flux.<ByteBuffer>empty()))
+                .switchIfEmpty(Mono.defer(() -> downloadUtility.download(fileKey, headers, metadata)));
     }
 
     /**
-     * Deletes file from S3 bucket corresponding to the fileKey
+     * Removes the file corresponding to the fileKey from the lecture, queueing
+     * it for deletion from the S3 bucket
      * @param id
      * @param lectureId
      * @param fileKey
@@ -275,33 +288,18 @@ public class LectureController {
                                                     @PathVariable String lectureId,
                                                     @PathVariable String fileKey) {
 
-        DeleteObjectRequest request = DeleteObjectRequest.builder()
-                .bucket(s3props.getBucket())
-                .key(fileKey)
-                .build();
-
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (!(course.getLectures().containsKey(lectureId)))
+        return lectureRepository.removeContent(id, lectureId, fileKey)
+                .flatMap(removed -> {
+                    if (!removed)
                         return Mono.just(ResponseEntity.notFound().<Void>build());
 
-                    final Lecture lecture = course.getLecture(lectureId);
-                    if (!(lecture.getContentUrls().containsKey(fileKey)))
-                        return Mono.just(ResponseEntity.notFound().<Void>build());
-
-                    return Mono.fromFuture(s3AsyncClient.deleteObject(request))
-                            .flatMap(response -> {
-                                checkResult(response);
-                                lecture.getContentUrls().remove(fileKey);
-                                course.putLecture(lectureId, lecture);
-                                return courseRepository.save(course)
-                                        .thenReturn(ResponseEntity.ok().<Void>build());
-                            });
-                }).defaultIfEmpty(ResponseEntity.notFound().<Void>build());
+                    return release(Collections.singleton(fileKey))
+                            .thenReturn(ResponseEntity.ok().<Void>build());
+                });
     }
 
     /**
-     * Deletes all files corresponding to the lectureId from S3
+     * Removes all files from the lecture, queueing them for deletion from S3
      * @param id
      * @param lectureId
      * @return Mono of ResponseEntity<Void> indicating the result of the request.
@@ -310,60 +308,81 @@ public class LectureController {
     public Mono<ResponseEntity<Void>> deleteAllContent(@PathVariable String id,
                                                        @PathVariable String lectureId) {
 
-        return courseRepository.findById(id)
-                .flatMap(course -> {
-                    if (!(course.getLectures().containsKey(lectureId)))
-                        return Mono.just(ResponseEntity.notFound().<Void>build());
-
-                    final Lecture lecture = course.getLecture(lectureId);
+        return lectureRepository.findByCourseIdAndLectureId(id, lectureId)
+                .flatMap(lecture -> {
                     if (lecture.getContentUrls().isEmpty())
                         return Mono.just(ResponseEntity.ok().<Void>build());
 
-                    final List<ObjectIdentifier> objectIdentifiersList = lecture.getContentUrls()
-                            .keySet().stream()
-                            .map(key -> ObjectIdentifier.builder().key(key).build())
-                            .collect(Collectors.toList());
-
-                    Delete deleteObjects = Delete.builder()
-                            .objects(objectIdentifiersList)
-                            .build();
-
-                    return Mono.fromFuture(s3AsyncClient.deleteObjects(DeleteObjectsRequest.builder()
-                            .bucket(s3props.getBucket())
-                            .delete(deleteObjects)
-                            .build())).flatMap(response -> {
-                                checkResult(response);
-                                lecture.getContentUrls().clear();
-                                course.putLecture(lectureId, lecture);
-                                return courseRepository.save(course)
-                                        .thenReturn(ResponseEntity.ok().<Void>build());
-                    });
+                    // Only the entries this request removed are released, as a
+                    // concurrent deleteContent may remove some of them first
+                    Flux<String> removed = Flux.fromIterable(new ArrayList<>(lecture.getContentUrls().keySet()))
+                            .concatMap(fileKey -> lectureRepository.removeContent(id, lectureId, fileKey)
+                                    .filter(Boolean::booleanValue)
+                                    .map(done -> fileKey));
+                    return deletionQueue.release(removed)
+                            .thenReturn(ResponseEntity.ok().<Void>build());
                 }).defaultIfEmpty(ResponseEntity.notFound().<Void>build());
     }
 
-    private static class DeleteFailedException extends RuntimeException {
-        private static final Long serialVersionUID = 1L;
-
-        private int statusCode;
-        private Optional<String> statusText;
+    /**
+     * Releases the content entries, queueing the objects from S3 that no other
+     * lecture content refers to for deletion
+     * @param fileKeys
+     * @return Mono signalling completion
+     */
+    private Mono<Void> release(Collection<String> fileKeys) {
+        return deletionQueue.release(Flux.fromIterable(new ArrayList<>(fileKeys)));
+    }
 
-        public DeleteFailedException(SdkResponse response) {
-            SdkHttpResponse sdkHttpResponse = response.sdkHttpResponse();
+    /**
+     * Answers a request for a lecture that was not found
+     * @param id
+     * @param lectureId
+     * @return Mono of ResponseEntity telling whether the course or the lecture is missing
+     */
+    private Mono<ResponseEntity<?>> lectureNotFound(String id, String lectureId) {
+        return catalogCache.courseExists(id)
+                .map(exists -> ResponseEntity
+                        .status(HttpStatus.NOT_FOUND)
+                        .body(exists ? "Lecture: " + lectureId + " not found!" : "Course: " + id + " not found!"));
+    }
 
-            if (sdkHttpResponse != null) {
-                this.statusCode = sdkHttpResponse.statusCode();
-                this.statusText = sdkHttpResponse.statusText();
-            } else {
-                this.statusCode = HttpStatus.INTERNAL_SERVER_ERROR.value();
-                this.statusText = Optional.of("UNKNOWN");
-            }
-        }
+    /**
+     * Adds the object to the lecture content. If the lecture already refers to it,
+     * or was deleted in the meantime, the reference just taken by the upload is
+     * released again.
+     * @param id
+     * @param lectureId
+     * @param savedFile
+     * @return Mono of the fileKey
+     */
+    private Mono<String> addContent(String id, String lectureId, SavedFile savedFile) {
+        String fileKey = savedFile.getFileKey();
+        String url = s3props.getUrl() +
+                "/" + s3props.getBucket() +
+                "/" + fileKey;
+
+        return lectureRepository.addContent(id, lectureId, url, savedFile.getMetadata())
+                .flatMap(added -> added
+                        ? Mono.just(fileKey)
+                        : release(Collections.singleton(fileKey))
+                                .thenReturn(fileKey));
     }
 
-    private static void checkResult(SdkResponse response) {
-        SdkHttpResponse sdkHttpResponse = response.sdkHttpResponse();
-        if (sdkHttpResponse == null || !sdkHttpResponse.isSuccessful())
-            Exceptions.propagate(new DeleteFailedException(response));
+    /**
+     * Returns the metadata of the lecture content. Content uploaded before metadata
+     * was captured is looked up in S3.
+     * @param lecture
+     * @param fileKey
+     * @return
+     */
+    private Mono<ContentMetadata> contentMetadata(Lecture lecture, String fileKey) {
+        ContentMetadata stored = lecture.getContentMetadata(fileKey);
+        if (stored != null)
+            return Mono.just(stored);
+
+        return downloadUtility.headObject(fileKey)
+                .map(head -> DownloadUtility.metadata(fileKey, head));
     }
 
 }
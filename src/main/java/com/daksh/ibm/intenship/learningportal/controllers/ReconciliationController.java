@@ -0,0 +1,47 @@
+package com.daksh.ibm.intenship.learningportal.controllers;
+
+import com.daksh.ibm.intenship.learningportal.model.ReconciliationReport;
+import com.daksh.ibm.intenship.learningportal.utils.Reconciliation;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/reconciliation")
+public class ReconciliationController {
+    private final Reconciliation reconciliation;
+
+    public ReconciliationController(Reconciliation reconciliation) {
+        this.reconciliation = reconciliation;
+    }
+
+    /**
+     * Starts reconciling the bucket with the lecture content in the background
+     * @param prefix only keys starting with it
+     * @param cleanup queue the orphaned objects for deletion
+     * @return ResponseEntity with the report of the reconciliation started, or
+     * Conflict with the report of the one running
+     */
+    @PostMapping
+    public ResponseEntity<ReconciliationReport> start(@RequestParam(required = false) String prefix,
+                                                      @RequestParam(defaultValue = "false") boolean cleanup) {
+        ReconciliationReport started = reconciliation.start(prefix, cleanup);
+        if (started == null)
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(reconciliation.report());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(started);
+    }
+
+    /**
+     * Returns the progress of the running reconciliation, or the outcome of the last one
+     * @return ResponseEntity containing the report
+     */
+    @GetMapping
+    public ResponseEntity<ReconciliationReport> getReport() {
+        ReconciliationReport report = reconciliation.report();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
+}
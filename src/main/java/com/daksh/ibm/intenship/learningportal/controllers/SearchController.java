@@ -0,0 +1,50 @@
+package com.daksh.ibm.intenship.learningportal.controllers;
+
+import com.daksh.ibm.intenship.learningportal.model.SearchHit;
+import com.daksh.ibm.intenship.learningportal.utils.SearchUtility;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+    private static final int MAX_LIMIT = 100;
+
+    private final SearchUtility searchUtility;
+
+    public SearchController(SearchUtility searchUtility) {
+        this.searchUtility = searchUtility;
+    }
+
+    /**
+     * Searches the names and descriptions of courses and lectures
+     * @param q words to search for
+     * @param limit maximum number of hits, at most 100
+     * @return ResponseEntity containing the hits, most relevant first
+     */
+    @GetMapping
+    public ResponseEntity<Flux<SearchHit>> search(@RequestParam String q,
+                                                  @RequestParam(defaultValue = "20") int limit) {
+        if (q.trim().isEmpty() || limit < 1)
+            return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(searchUtility.search(q, Math.min(limit, MAX_LIMIT)));
+    }
+
+    /**
+     * Suggests courses and lectures whose names match the text typed so far
+     * @param q text typed so far, the last word of which may be incomplete
+     * @param limit maximum number of suggestions, at most 100
+     * @return ResponseEntity containing the suggestions
+     */
+    @GetMapping("suggest")
+    public ResponseEntity<Flux<SearchHit>> suggest(@RequestParam String q,
+                                                   @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1)
+            return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(searchUtility.suggest(q, Math.min(limit, MAX_LIMIT)));
+    }
+}
@@ -0,0 +1,337 @@
+package com.daksh.ibm.intenship.learningportal.controllers;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.model.UploadSession;
+import com.daksh.ibm.intenship.learningportal.model.UploadSession.UploadedPart;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import com.daksh.ibm.intenship.learningportal.repository.LectureRepository;
+import com.daksh.ibm.intenship.learningportal.repository.UploadSessionRepository;
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import com.daksh.ibm.intenship.learningportal.utils.DeletionQueue;
+import com.daksh.ibm.intenship.learningportal.utils.UploadUtility;
+import com.daksh.ibm.intenship.learningportal.utils.UploadUtility.UploadState;
+import com.daksh.ibm.intenship.learningportal.utils.Utility;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Resumable uploads. A client creates a session, sends the file in one or more
+ * PUT requests starting at the session offset, and after a dropped connection
+ * asks for the offset again and resumes from there. The offset is always on a
+ * part boundary, so only the part that was in flight is sent again.
+ */
+@RestController
+@RequestMapping("/courses/{id}/lectures/{lectureId}/uploads")
+@EnableConfigurationProperties(S3ClientConfigurationProperties.class)
+@Slf4j
+public class UploadSessionController {
+
+    private final CatalogCache catalogCache;
+    private final LectureRepository lectureRepository;
+    private final UploadSessionRepository sessionRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final S3ClientConfigurationProperties s3props;
+    private final UploadUtility uploadUtility;
+    private final DeletionQueue deletionQueue;
+
+    public UploadSessionController(CatalogCache catalogCache, LectureRepository lectureRepository,
+                                   UploadSessionRepository sessionRepository,
+                                   ReactiveMongoTemplate mongoTemplate, S3ClientConfigurationProperties s3props,
+                                   UploadUtility uploadUtility, DeletionQueue deletionQueue) {
+        this.catalogCache = catalogCache;
+        this.lectureRepository = lectureRepository;
+        this.sessionRepository = sessionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.s3props = s3props;
+        this.uploadUtility = uploadUtility;
+        this.deletionQueue = deletionQueue;
+    }
+
+    /**
+     * Starts a resumable upload for the lecture
+     * @param id
+     * @param lectureId
+     * @param filename
+     * @param contentType
+     * @param length total file size, if known
+     * @return Mono of ResponseEntity containing the created session
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<ResponseEntity<?>> createSession(@PathVariable String id,
+                                                 @PathVariable String lectureId,
+                                                 @RequestParam(required = false) String filename,
+                                                 @RequestParam(required = false) String contentType,
+                                                 @RequestParam(required = false) Long length) {
+        return lectureRepository.existsById(Lecture.key(id, lectureId))
+                .flatMap(exists -> {
+                    if (!exists)
+                        return catalogCache.courseExists(id)
+                                .map(courseExists -> ResponseEntity
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .body(courseExists
+                                                ? "Lecture: " + lectureId + " not found!"
+                                                : "Course: " + id + " not found!"));
+
+                    String fileKey = UUID.randomUUID().toString();
+                    MediaType mediaType = contentType == null
+                            ? MediaType.APPLICATION_OCTET_STREAM
+                            : MediaType.parseMediaType(contentType);
+
+                    UploadSession session = new UploadSession();
+                    session.setCourseId(id);
+                    session.setLectureId(lectureId);
+                    session.setBucket(s3props.getBucket());
+                    session.setFileKey(fileKey);
+                    session.setFilename(filename == null ? fileKey : filename);
+                    session.setContentType(mediaType.toString());
+                    session.setTotalLength(length);
+                    session.setPartSize(uploadUtility.partSize(length == null ? -1 : length));
+
+                    return uploadUtility.createUpload(session.getBucket(), fileKey, session.getFilename(), mediaType)
+                            .flatMap(uploadId -> {
+                                session.setUploadId(uploadId);
+                                return sessionRepository.save(session);
+                            })
+                            .map(savedSession -> ResponseEntity.status(HttpStatus.CREATED).body(savedSession));
+                });
+    }
+
+    /**
+     * Returns the session, including the offset the upload must resume from
+     * @param id
+     * @param lectureId
+     * @param sessionId
+     * @return Mono of ResponseEntity containing the session
+     */
+    @GetMapping("{sessionId}")
+    public Mono<ResponseEntity<UploadSession>> getSession(@PathVariable String id,
+                                                          @PathVariable String lectureId,
+                                                          @PathVariable String sessionId) {
+        return findSession(id, lectureId, sessionId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Uploads the next bytes of the file, starting at offset. Every part that
+     * completes is recorded in the session right away, so a dropped connection
+     * only loses the parts that were still in flight. A trailing chunk smaller
+     * than a part is dropped unless this is the end of the file, and must be
+     * sent again with the next request. The session is leased to one request
+     * at a time, and parts uploaded after the first missing one are dropped
+     * before the upload resumes.
+     * @param id
+     * @param lectureId
+     * @param sessionId
+     * @param offset must be equal to the session offset
+     * @param complete true if the body ends the file
+     * @param headers
+     * @param body
+     * @return Mono of ResponseEntity containing the session, or the upload result once complete.
+     * Conflict if the offset does not match or another request is uploading into the session
+     */
+    @PutMapping("{sessionId}")
+    public Mono<ResponseEntity<?>> uploadContent(@PathVariable String id,
+                                                 @PathVariable String lectureId,
+                                                 @PathVariable String sessionId,
+                                                 @RequestParam long offset,
+                                                 @RequestParam(defaultValue = "false") boolean complete,
+                                                 @RequestHeader HttpHeaders headers,
+                                                 @RequestBody Flux<DataBuffer> body) {
+        String leaseId = UUID.randomUUID().toString();
+        return findSession(id, lectureId, sessionId)
+                .flatMap(found -> acquireLease(sessionId, leaseId)
+                        .<ResponseEntity<?>>flatMap(session -> {
+                            if (offset != session.getOffset())
+                                return releaseLease(sessionId, leaseId)
+                                        .thenReturn(ResponseEntity.status(HttpStatus.CONFLICT).body(session));
+
+                            return dropStaleParts(session, leaseId)
+                                    .then(upload(session, leaseId, complete, headers, body))
+                                    .onErrorResume(error -> releaseLease(sessionId, leaseId).then(Mono.error(error)))
+                                    .doOnCancel(() -> releaseLease(sessionId, leaseId).subscribe());
+                        })
+                        .defaultIfEmpty(ResponseEntity.status(HttpStatus.CONFLICT).body(found)))
+                .defaultIfEmpty(ResponseEntity
+                        .status(HttpStatus.NOT_FOUND)
+                        .body("Upload session: " + sessionId + " not found!"));
+    }
+
+    private Mono<ResponseEntity<?>> upload(UploadSession session, String leaseId, boolean complete,
+                                           HttpHeaders headers, Flux<DataBuffer> body) {
+        String sessionId = session.getId();
+        long offset = session.getOffset();
+        long length = headers.getContentLength();
+        final boolean last = complete || (session.getTotalLength() != null && length >= 0
+                && offset + length >= session.getTotalLength());
+
+        UploadState uploadState = new UploadState(session.getBucket(),
+                session.getFileKey(), session.getUploadId(), session.getPartSize());
+
+        Flux<List<DataBuffer>> parts = uploadUtility.bufferParts(uploadState, body)
+                .filter(part -> {
+                    if (last || Utility.readableByteCount(part) >= session.getPartSize())
+                        return true;
+                    Utility.release(part);
+                    return false;
+                });
+
+        return uploadUtility.uploadParts(uploadState, parts, session.getNextPartNumber())
+                .concatMap(part -> savePart(sessionId, leaseId, part))
+                .then(last
+                        ? Mono.defer(() -> completeSession(sessionId))
+                        : releaseLease(sessionId, leaseId)
+                                .then(sessionRepository.findById(sessionId).map(ResponseEntity::ok)));
+    }
+
+    /**
+     * Aborts the upload and deletes the session
+     * @param id
+     * @param lectureId
+     * @param sessionId
+     * @return Mono of ResponseEntity<Void> indicating the result of the request
+     */
+    @DeleteMapping("{sessionId}")
+    public Mono<ResponseEntity<Void>> abortSession(@PathVariable String id,
+                                                   @PathVariable String lectureId,
+                                                   @PathVariable String sessionId) {
+        return findSession(id, lectureId, sessionId)
+                .flatMap(session -> uploadUtility.abortUpload(new UploadState(session.getBucket(),
+                        session.getFileKey(), session.getUploadId(), session.getPartSize()))
+                        .then(sessionRepository.delete(session))
+                        .thenReturn(ResponseEntity.ok().<Void>build()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private Mono<UploadSession> findSession(String id, String lectureId, String sessionId) {
+        return sessionRepository.findById(sessionId)
+                .filter(session -> id.equals(session.getCourseId()) && lectureId.equals(session.getLectureId()));
+    }
+
+    /**
+     * Leases the session to a request, unless another request holds it
+     * @param sessionId
+     * @param leaseId
+     * @return Mono of the leased session, or an empty Mono if it is leased to another request
+     */
+    private Mono<UploadSession> acquireLease(String sessionId, String leaseId) {
+        return mongoTemplate.findAndModify(query(where("_id").is(sessionId)
+                        .orOperator(where("leaseId").exists(false), where("leaseExpiresDate").lt(new Date()))),
+                new Update()
+                        .set("leaseId", leaseId)
+                        .set("leaseExpiresDate", leaseExpiresDate()),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+    }
+
+    private Mono<Void> releaseLease(String sessionId, String leaseId) {
+        return mongoTemplate.updateFirst(query(where("_id").is(sessionId).and("leaseId").is(leaseId)),
+                new Update().unset("leaseId").unset("leaseExpiresDate"),
+                UploadSession.class)
+                .then();
+    }
+
+    // Parts after the first missing one are uploaded again by the resume
+    private Mono<Void> dropStaleParts(UploadSession session, String leaseId) {
+        List<Integer> stale = session.getStalePartNumbers();
+        if (stale.isEmpty())
+            return Mono.empty();
+
+        Update update = new Update();
+        for (int partNumber : stale) {
+            update.unset("parts." + partNumber);
+            session.getParts().remove(Integer.toString(partNumber));
+        }
+        return mongoTemplate.updateFirst(query(where("_id").is(session.getId()).and("leaseId").is(leaseId)),
+                update, UploadSession.class)
+                .then();
+    }
+
+    /**
+     * Records an uploaded part and renews the lease
+     * @param sessionId
+     * @param leaseId
+     * @param part
+     * @return Mono of the part, or an error if the lease was lost to another request
+     */
+    private Mono<UploadedPart> savePart(String sessionId, String leaseId, UploadedPart part) {
+        return mongoTemplate.updateFirst(query(where("_id").is(sessionId).and("leaseId").is(leaseId)),
+                new Update()
+                        .set("parts." + part.getPartNumber(), part)
+                        .set("lastModifiedDate", new Date())
+                        .set("leaseExpiresDate", leaseExpiresDate()),
+                UploadSession.class)
+                .flatMap(result -> result.getModifiedCount() > 0
+                        ? Mono.just(part)
+                        : Mono.error(new UploadUtility.UploadFailedException(HttpStatus.CONFLICT.value(),
+                                Optional.of("upload session lease lost: " + sessionId))));
+    }
+
+    private Date leaseExpiresDate() {
+        return new Date(System.currentTimeMillis() + s3props.getUploadSessionLease().toMillis());
+    }
+
+    /**
+     * Completes the multipart upload and adds the file to the lecture content.
+     * The file is not deduplicated: its parts arrive over several requests,
+     * possibly to other instances, and no hash of the whole content is known
+     * without reading it back. It is left out of the ContentIndex, so it is
+     * never shared and is deleted once its entry is released
+     * @param sessionId
+     * @return
+     */
+    private Mono<ResponseEntity<?>> completeSession(String sessionId) {
+        return sessionRepository.findById(sessionId)
+                .flatMap(session -> {
+                    UploadState uploadState = new UploadState(session.getBucket(),
+                            session.getFileKey(), session.getUploadId(), session.getPartSize());
+                    String fileKey = session.getFileKey();
+
+                    // Parts above a gap may be left from before a resume and are not part of the file
+                    return uploadUtility.completeUpload(uploadState, session.getContiguousParts())
+                            .flatMap(response -> {
+                                UploadUtility.checkResult(response);
+                                String url = s3props.getUrl() +
+                                        "/" + s3props.getBucket() +
+                                        "/" + fileKey;
+                                return lectureRepository.addContent(session.getCourseId(), session.getLectureId(), url,
+                                        new ContentMetadata(fileKey, session.getOffset(), session.getContentType(),
+                                                session.getFilename(), response.eTag(), new Date()));
+                            })
+                            .flatMap(added -> {
+                                if (added)
+                                    return Mono.empty();
+                                log.warn("[I121] lecture {} removed during upload of {}",
+                                        session.getLectureId(), fileKey);
+                                // Nothing refers to the completed object
+                                return deletionQueue.enqueue(session.getBucket(), Collections.singletonList(fileKey));
+                            })
+                            .then(sessionRepository.delete(session))
+                            .thenReturn(ResponseEntity.status(HttpStatus.CREATED)
+                                    .body(new UploadUtility.UploadResult(HttpStatus.CREATED, Arrays.asList(fileKey))));
+                });
+    }
+}
@@ -0,0 +1,80 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Outcome of one batch of a bulk import. Records are numbered by their line
+ * in the imported body, counting from 0 and skipping blank lines
+ */
+@ToString
+@EqualsAndHashCode
+public class BulkResult {
+
+    // Number of the first record of the batch
+    private final long offset;
+
+    private final int records;
+
+    private final int inserted;
+
+    private final List<RecordError> errors;
+
+    public BulkResult(long offset, int records, int inserted, List<RecordError> errors) {
+        this.offset = offset;
+        this.records = records;
+        this.inserted = inserted;
+        this.errors = errors;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public List<RecordError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * A record that was not inserted
+     */
+    @ToString
+    @EqualsAndHashCode
+    public static class RecordError {
+
+        private final long record;
+
+        // Id of the course or lecture, if the record could be read
+        private final String id;
+
+        private final String message;
+
+        public RecordError(long record, String id, String message) {
+            this.record = record;
+            this.id = id;
+            this.message = message;
+        }
+
+        public long getRecord() {
+            return record;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
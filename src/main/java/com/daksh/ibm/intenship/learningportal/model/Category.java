@@ -4,12 +4,11 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Document
+@CompoundIndex(name = "name_id", def = "{'name': 1, '_id': 1}")
 @EqualsAndHashCode
 @ToString
 public class Category {
@@ -19,16 +18,18 @@ public class Category {
 
     private String name;
 
-    private List<String> courseList;
+    // Courses list their categories, and this counts the courses listing the
+    // category. It is only changed in the database, with $inc, as courses are
+    // saved and deleted
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long courseCount;
 
     public Category() {
-        courseList = new ArrayList<>();
     }
 
-    public Category(String id, String name, List<String> courseList) {
+    public Category(String id, String name) {
         this.id = id;
         this.name = name;
-        this.courseList = courseList;
     }
 
     public String getId() {
@@ -47,11 +48,11 @@ public class Category {
         this.name = name;
     }
 
-    public List<String> getCourseList() {
-        return courseList;
+    public long getCourseCount() {
+        return courseCount;
     }
 
-    public void setCourseList(List<String> courseList) {
-        this.courseList = courseList;
+    public void setCourseCount(long courseCount) {
+        this.courseCount = courseCount;
     }
 }
@@ -0,0 +1,89 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.Date;
+
+/**
+ * Metadata of a stored content object, as needed to answer a download
+ */
+@ToString
+@EqualsAndHashCode
+public class ContentMetadata {
+
+    private String fileKey;
+
+    private long size;
+
+    private String contentType;
+
+    private String filename;
+
+    private String eTag;
+
+    @JsonProperty
+    private Date lastModified;
+
+    public ContentMetadata() {
+    }
+
+    public ContentMetadata(String fileKey, long size, String contentType, String filename,
+                           String eTag, Date lastModified) {
+        this.fileKey = fileKey;
+        this.size = size;
+        this.contentType = contentType;
+        this.filename = filename;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public void setFileKey(String fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,98 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.joda.time.DateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * An S3 object indexed by the SHA-256 hash of its content. Lecture content entries
+ * with the same content share the object, and refCount counts those entries.
+ */
+@Document
+@ToString
+@EqualsAndHashCode
+public class ContentObject {
+
+    @Id
+    private String hash;
+
+    @Indexed(unique = true)
+    private String fileKey;
+
+    private long size;
+
+    private long refCount;
+
+    private String eTag;
+
+    @JsonProperty
+    private Date createdDate;
+
+    public ContentObject() {
+        createdDate = DateTime.now().toDate();
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public void setFileKey(String fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(long refCount) {
+        this.refCount = refCount;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public Date getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Date createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    /**
+     * Metadata of this object as the content of a lecture
+     * @param contentType content type of the upload that refers to the object
+     * @param filename file name of the upload that refers to the object
+     * @return
+     */
+    public ContentMetadata toMetadata(String contentType, String filename) {
+        return new ContentMetadata(fileKey, size, contentType, filename, eTag, createdDate);
+    }
+}
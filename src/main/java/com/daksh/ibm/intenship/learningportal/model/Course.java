@@ -1,34 +1,69 @@
 package com.daksh.ibm.intenship.learningportal.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 import org.joda.time.DateTime;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.*;
 
+// Listings, of all courses or of the courses in a category, are sorted by
+// one of these keys and then by _id. Equality on the category comes first,
+// the sort next, and the price and creation date ranges a listing can be
+// filtered by last, so ranges are checked in the index
 @Document
+@CompoundIndexes({
+        @CompoundIndex(name = "name_id", def = "{'name': 1, '_id': 1}"),
+        @CompoundIndex(name = "createdDate_id_price", def = "{'createdDate': 1, '_id': 1, 'price': 1}"),
+        @CompoundIndex(name = "price_id_createdDate", def = "{'price': 1, '_id': 1, 'createdDate': 1}"),
+        @CompoundIndex(name = "categories_id", def = "{'categories': 1, '_id': 1}"),
+        @CompoundIndex(name = "categories_name_id", def = "{'categories': 1, 'name': 1, '_id': 1}"),
+        @CompoundIndex(name = "categories_createdDate_id_price",
+                def = "{'categories': 1, 'createdDate': 1, '_id': 1, 'price': 1}"),
+        @CompoundIndex(name = "categories_price_id_createdDate",
+                def = "{'categories': 1, 'price': 1, '_id': 1, 'createdDate': 1}")
+})
 @ToString
 @EqualsAndHashCode
-public class Course {
-    int count = 0;
+public class Course implements Searchable {
+    // Lecture ids are assigned from this counter. It is only incremented in the
+    // database, with $inc, so concurrent lecture creation never reuses an id
+    private int count = 0;
 
     @Id
     private String id;
 
+    @TextIndexed(weight = 3)
     private String name;
 
+    @TextIndexed
     private String description;
 
+    // Words of the name, matched by prefix for typeahead
+    @Indexed
+    @JsonIgnore
+    private List<String> keywords;
+
     private Double price;
 
     @JsonProperty
     private Date createdDate;
 
+    // Lectures are stored in their own collection, and only set here to be
+    // returned with the course
+    @Transient
     @JsonProperty
     private Map<String, Lecture> lectures;
 
+    // Source of the category listings. Change it through
+    // CourseRepository.saveCourse, which keeps the category course counts
     @JsonProperty
     private List<String> categories;
 
@@ -90,18 +125,22 @@ public class Course {
         return lectures;
     }
 
-    public Lecture getLecture(String lectureId) {
-        return lectures.get(lectureId);
-    }
-
-    public Lecture putLecture(String lectureId, Lecture lecture) {
-        lecture.setId(lectureId);
-        return lectures.put(lectureId, lecture);
+    @JsonIgnore
+    public int getCount() {
+        return count;
     }
 
-    public Lecture addLecture(Lecture lecture) {
-        lecture.setId(Integer.toString(count++));
-        return lectures.put(lecture.getId(), lecture);
+    /**
+     * Returns the lowest value of the lecture id counter that hands out none of
+     * the numeric ids of the lectures the course holds
+     * @return one past the highest numeric lecture id, 0 without lectures
+     */
+    public int nextLectureId() {
+        return lectures == null ? 0 : lectures.keySet().stream()
+                .filter(lectureId -> lectureId.matches("\\d{1,9}"))
+                .mapToInt(lectureId -> Integer.parseInt(lectureId) + 1)
+                .max()
+                .orElse(0);
     }
 
     public void setLectures(Map<String, Lecture> lectures) {
@@ -118,4 +157,13 @@ public class Course {
         this.lectures = lectures;
         this.categories = categories;
     }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    @Override
+    public void setKeywords(List<String> keywords) {
+        this.keywords = keywords;
+    }
 }
@@ -0,0 +1,46 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Fields of a course shown in listings. Read from a projection of the course
+ * document, without its description or lectures
+ */
+@ToString
+@EqualsAndHashCode
+public class CourseSummary {
+    // Fields of the course document read into a summary
+    public static final String[] FIELDS = {"name", "price"};
+
+    private final String id;
+
+    private final String name;
+
+    private final Double price;
+
+    private final long lectureCount;
+
+    public CourseSummary(Course course, long lectureCount) {
+        this.id = course.getId();
+        this.name = course.getName();
+        this.price = course.getPrice();
+        this.lectureCount = lectureCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public long getLectureCount() {
+        return lectureCount;
+    }
+}
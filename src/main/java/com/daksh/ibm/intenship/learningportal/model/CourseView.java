@@ -0,0 +1,33 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import java.util.Optional;
+
+/**
+ * How much of a course is returned
+ */
+public enum CourseView {
+    // CourseSummary, read from a projection of the course
+    SUMMARY,
+    // The whole course, with its lectures
+    DETAIL;
+
+    /**
+     * Parses the view request parameter
+     * @param view
+     * @return Optional of the view, empty if it is unknown
+     */
+    public static Optional<CourseView> of(String view) {
+        for (CourseView value : values())
+            if (value.name().equalsIgnoreCase(view))
+                return Optional.of(value);
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the fields of the course document the view needs
+     * @return the fields, or null for the whole document
+     */
+    public String[] fields() {
+        return this == SUMMARY ? CourseSummary.FIELDS : null;
+    }
+}
@@ -1,19 +1,35 @@
 package com.daksh.ibm.intenship.learningportal.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.joda.time.DateTime;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+@Document("lectures")
 @ToString
 @EqualsAndHashCode
-public class Lecture {
+public class Lecture implements Searchable {
 
+    // courseId:lectureId, as lecture ids are only unique within their course
     @Id
+    @JsonIgnore
+    private String key;
+
+    @Indexed
+    @JsonIgnore
+    private String courseId;
+
+    @Field("lectureId")
     private String id;
 
     private String duration;
@@ -21,16 +37,28 @@ public class Lecture {
     @JsonProperty
     private Date createdDate;
 
+    @TextIndexed(weight = 3)
     private String name;
 
+    @TextIndexed
     private String description;
 
+    // Words of the name, matched by prefix for typeahead
+    @Indexed
+    @JsonIgnore
+    private List<String> keywords;
+
     @JsonProperty
     private Map<String, String> contentUrls;
 
+    // download metadata of each content entry, captured at upload, keyed by fileKey
+    @JsonProperty
+    private Map<String, ContentMetadata> contentMetadata;
+
     public Lecture() {
         createdDate = DateTime.now().toDate();
         contentUrls = new HashMap<>();
+        contentMetadata = new HashMap<>();
     }
 
     public Lecture(String id, String duration, Date createdDate, String name, String description, Map<String, String> contentUrls) {
@@ -44,6 +72,37 @@ public class Lecture {
 
 
 
+    public static String key(String courseId, String lectureId) {
+        return courseId + ":" + lectureId;
+    }
+
+    /**
+     * Places the lecture in a course
+     * @param courseId
+     * @param lectureId
+     */
+    public void assign(String courseId, String lectureId) {
+        this.key = key(courseId, lectureId);
+        this.courseId = courseId;
+        this.id = lectureId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getCourseId() {
+        return courseId;
+    }
+
+    public void setCourseId(String courseId) {
+        this.courseId = courseId;
+    }
+
     public String getId() {
         return id;
     }
@@ -96,4 +155,30 @@ public class Lecture {
         this.contentUrls = contentUrls;
     }
 
+    /**
+     * Returns the metadata of a content entry
+     * @param fileKey
+     * @return the metadata, or null for content uploaded before metadata was captured
+     */
+    public ContentMetadata getContentMetadata(String fileKey) {
+        return contentMetadata == null ? null : contentMetadata.get(fileKey);
+    }
+
+    public Map<String, ContentMetadata> getContentMetadata() {
+        return contentMetadata;
+    }
+
+    public void setContentMetadata(Map<String, ContentMetadata> contentMetadata) {
+        this.contentMetadata = contentMetadata;
+    }
+
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    @Override
+    public void setKeywords(List<String> keywords) {
+        this.keywords = keywords;
+    }
 }
@@ -0,0 +1,98 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * An S3 object that is no longer referenced and waits to be deleted.
+ * Each object is queued once, keyed by its fileKey.
+ */
+@Document
+@ToString
+@EqualsAndHashCode
+public class PendingDeletion {
+
+    @Id
+    private String fileKey;
+
+    private String bucket;
+
+    private int attempts;
+
+    // Taken for deletion from this date on. Taking a batch moves it past the lease
+    @Indexed
+    @JsonProperty
+    private Date dueDate;
+
+    @JsonProperty
+    private Date createdDate;
+
+    private String lastError;
+
+    // Set by the take that leased the object, so the instance only deletes and
+    // re-queues the objects it holds the lease of
+    @Indexed(sparse = true)
+    private String leaseId;
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public void setFileKey(String fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(Date dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    public Date getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Date createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(String leaseId) {
+        this.leaseId = leaseId;
+    }
+}
@@ -0,0 +1,219 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Progress and outcome of a reconciliation of the bucket against the lecture
+ * content. The counters are updated while the reconciliation runs, by one
+ * thread at a time, and may be read at any time.
+ */
+@ToString
+public class ReconciliationReport {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private final String bucket;
+
+    private final String prefix;
+
+    // Whether orphaned objects are queued for deletion
+    private final boolean cleanup;
+
+    @JsonProperty
+    private final Date startedDate;
+
+    private volatile Status status = Status.RUNNING;
+
+    @JsonProperty
+    private volatile Date finishedDate;
+
+    private volatile String error;
+
+    // Last key reconciled. Keys are reconciled in ascending order
+    private volatile String lastKey;
+
+    private volatile long objects;
+
+    private volatile long bytes;
+
+    // Distinct keys referenced by lecture content
+    private volatile long references;
+
+    // Objects neither referenced nor already queued for deletion
+    private volatile long orphans;
+
+    private volatile long orphanedBytes;
+
+    // Orphans still in the content index. They are not queued, as their
+    // content may be referenced again through deduplication
+    private volatile long indexedOrphans;
+
+    // Unreferenced objects already queued for deletion
+    private volatile long queuedObjects;
+
+    // Unreferenced objects within the grace period, left alone
+    private volatile long recentObjects;
+
+    // Keys referenced by lecture content without an object
+    private volatile long danglingReferences;
+
+    private volatile long enqueued;
+
+    private final List<String> sampleOrphans = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> sampleDanglingReferences = Collections.synchronizedList(new ArrayList<>());
+
+    public ReconciliationReport(String bucket, String prefix, boolean cleanup) {
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.cleanup = cleanup;
+        this.startedDate = new Date();
+    }
+
+    public void object(String key, long size) {
+        lastKey = key;
+        objects++;
+        bytes += size;
+    }
+
+    public void reference(String key) {
+        lastKey = key;
+        references++;
+    }
+
+    public void orphan(String key, long size, boolean indexed, int sampleSize) {
+        orphans++;
+        orphanedBytes += size;
+        if (indexed)
+            indexedOrphans++;
+        if (sampleOrphans.size() < sampleSize)
+            sampleOrphans.add(key);
+    }
+
+    public void queued() {
+        queuedObjects++;
+    }
+
+    public void recent() {
+        recentObjects++;
+    }
+
+    public void dangling(String key, int sampleSize) {
+        danglingReferences++;
+        if (sampleDanglingReferences.size() < sampleSize)
+            sampleDanglingReferences.add(key);
+    }
+
+    public void enqueued(int count) {
+        enqueued += count;
+    }
+
+    public void complete() {
+        finishedDate = new Date();
+        status = Status.COMPLETED;
+    }
+
+    public void fail(Throwable error) {
+        finishedDate = new Date();
+        this.error = String.valueOf(error.getMessage());
+        status = Status.FAILED;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isCleanup() {
+        return cleanup;
+    }
+
+    public Date getStartedDate() {
+        return startedDate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Date getFinishedDate() {
+        return finishedDate;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getReferences() {
+        return references;
+    }
+
+    public long getOrphans() {
+        return orphans;
+    }
+
+    public long getOrphanedBytes() {
+        return orphanedBytes;
+    }
+
+    public long getIndexedOrphans() {
+        return indexedOrphans;
+    }
+
+    public long getQueuedObjects() {
+        return queuedObjects;
+    }
+
+    public long getRecentObjects() {
+        return recentObjects;
+    }
+
+    public long getDanglingReferences() {
+        return danglingReferences;
+    }
+
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public List<String> getSampleOrphans() {
+        return sampleOrphans;
+    }
+
+    public List<String> getSampleDanglingReferences() {
+        return sampleDanglingReferences;
+    }
+
+    /**
+     * Objects listed per second, since the start until the end
+     * @return throughput of the listing
+     */
+    public double getObjectsPerSecond() {
+        Date end = finishedDate == null ? new Date() : finishedDate;
+        long millis = Math.max(1, end.getTime() - startedDate.getTime());
+        return objects * 1000.0 / millis;
+    }
+}
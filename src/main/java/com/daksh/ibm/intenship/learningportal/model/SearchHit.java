@@ -0,0 +1,45 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * A course or lecture found by the search
+ */
+@ToString
+@EqualsAndHashCode
+public class SearchHit {
+
+    private final String courseId;
+
+    // null for a course
+    private final String lectureId;
+
+    private final String name;
+
+    // Text search relevance, null for typeahead suggestions
+    private final Double score;
+
+    public SearchHit(String courseId, String lectureId, String name, Double score) {
+        this.courseId = courseId;
+        this.lectureId = lectureId;
+        this.name = name;
+        this.score = score;
+    }
+
+    public String getCourseId() {
+        return courseId;
+    }
+
+    public String getLectureId() {
+        return lectureId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,14 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import java.util.List;
+
+/**
+ * Documents found by the search. Their keywords, the lower case words of the
+ * name, are set by SearchKeywords whenever they are saved
+ */
+public interface Searchable {
+
+    String getName();
+
+    void setKeywords(List<String> keywords);
+}
@@ -0,0 +1,289 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.joda.time.DateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persisted state of a resumable multipart upload. Parts are keyed by
+ * part number, so a part uploaded again after a resume replaces the old entry.
+ */
+@Document
+@ToString
+@EqualsAndHashCode
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    private String courseId;
+
+    private String lectureId;
+
+    private String bucket;
+
+    private String fileKey;
+
+    private String uploadId;
+
+    private String filename;
+
+    private String contentType;
+
+    private Long totalLength;
+
+    private int partSize;
+
+    @JsonProperty
+    private Map<String, UploadedPart> parts;
+
+    @JsonProperty
+    private Date createdDate;
+
+    @JsonProperty
+    private Date lastModifiedDate;
+
+    // Held by the request uploading into the session, so that two requests
+    // do not upload parts at the same time. Renewed with every part
+    @JsonIgnore
+    private String leaseId;
+
+    @JsonIgnore
+    private Date leaseExpiresDate;
+
+    public UploadSession() {
+        parts = new HashMap<>();
+        createdDate = DateTime.now().toDate();
+        lastModifiedDate = createdDate;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getCourseId() {
+        return courseId;
+    }
+
+    public void setCourseId(String courseId) {
+        this.courseId = courseId;
+    }
+
+    public String getLectureId() {
+        return lectureId;
+    }
+
+    public void setLectureId(String lectureId) {
+        this.lectureId = lectureId;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public void setFileKey(String fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getTotalLength() {
+        return totalLength;
+    }
+
+    public void setTotalLength(Long totalLength) {
+        this.totalLength = totalLength;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(int partSize) {
+        this.partSize = partSize;
+    }
+
+    public Map<String, UploadedPart> getParts() {
+        return parts;
+    }
+
+    public void setParts(Map<String, UploadedPart> parts) {
+        this.parts = parts;
+    }
+
+    public Date getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Date createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public Date getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public void setLastModifiedDate(Date lastModifiedDate) {
+        this.lastModifiedDate = lastModifiedDate;
+    }
+
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(String leaseId) {
+        this.leaseId = leaseId;
+    }
+
+    public Date getLeaseExpiresDate() {
+        return leaseExpiresDate;
+    }
+
+    public void setLeaseExpiresDate(Date leaseExpiresDate) {
+        this.leaseExpiresDate = leaseExpiresDate;
+    }
+
+    /**
+     * Number of the first part that has not been uploaded yet. Parts after
+     * it may already be uploaded, but they are sent again on resume.
+     * @return
+     */
+    @JsonProperty
+    public int getNextPartNumber() {
+        int partNumber = 1;
+        while (parts.containsKey(Integer.toString(partNumber)))
+            partNumber++;
+        return partNumber;
+    }
+
+    /**
+     * Byte offset the client must resume from: the total size of the
+     * uploaded parts before {@link #getNextPartNumber()}
+     * @return
+     */
+    @JsonProperty
+    public long getOffset() {
+        long offset = 0;
+        int nextPartNumber = getNextPartNumber();
+        for (int partNumber = 1; partNumber < nextPartNumber; partNumber++)
+            offset += parts.get(Integer.toString(partNumber)).getSize();
+        return offset;
+    }
+
+    /**
+     * Parts uploaded before {@link #getNextPartNumber()}, in order. Only these
+     * make up the file, the others are uploaded again
+     * @return
+     */
+    @JsonIgnore
+    public List<UploadedPart> getContiguousParts() {
+        List<UploadedPart> contiguous = new ArrayList<>();
+        int nextPartNumber = getNextPartNumber();
+        for (int partNumber = 1; partNumber < nextPartNumber; partNumber++)
+            contiguous.add(parts.get(Integer.toString(partNumber)));
+        return contiguous;
+    }
+
+    /**
+     * Numbers of the parts uploaded after {@link #getNextPartNumber()}. A resume
+     * uploads them again, so they are dropped before it starts
+     * @return
+     */
+    @JsonIgnore
+    public List<Integer> getStalePartNumbers() {
+        List<Integer> stale = new ArrayList<>();
+        int nextPartNumber = getNextPartNumber();
+        for (String partNumber : parts.keySet())
+            if (Integer.parseInt(partNumber) >= nextPartNumber)
+                stale.add(Integer.parseInt(partNumber));
+        return stale;
+    }
+
+    @ToString
+    @EqualsAndHashCode
+    public static class UploadedPart {
+
+        private int partNumber;
+
+        private String eTag;
+
+        private long size;
+
+        public UploadedPart() {
+        }
+
+        public UploadedPart(int partNumber, String eTag, long size) {
+            this.partNumber = partNumber;
+            this.eTag = eTag;
+            this.size = size;
+        }
+
+        public int getPartNumber() {
+            return partNumber;
+        }
+
+        public void setPartNumber(int partNumber) {
+            this.partNumber = partNumber;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public void setETag(String eTag) {
+            this.eTag = eTag;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+    }
+}
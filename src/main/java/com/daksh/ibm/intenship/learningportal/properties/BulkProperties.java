@@ -0,0 +1,43 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Bulk import of courses and lectures
+ */
+@ConfigurationProperties(prefix = "bulk")
+public class BulkProperties {
+    // Records written by one bulkWrite
+    private int batchSize = 1000;
+
+    // Batches written at the same time
+    private int concurrency = 4;
+
+    // Longest line of an imported body, holding one record
+    private DataSize maxRecordSize = DataSize.ofMegabytes(16);
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public DataSize getMaxRecordSize() {
+        return maxRecordSize;
+    }
+
+    public void setMaxRecordSize(DataSize maxRecordSize) {
+        this.maxRecordSize = maxRecordSize;
+    }
+}
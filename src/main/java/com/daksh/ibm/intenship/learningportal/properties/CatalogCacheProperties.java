@@ -0,0 +1,121 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * In-memory cache of course and category documents
+ */
+@ConfigurationProperties(prefix = "catalog.cache")
+public class CatalogCacheProperties {
+    private boolean enabled = true;
+
+    // Documents kept of each type. Entries are admitted and evicted by
+    // Caffeine's W-TinyLFU policy
+    private long maxSize = 10000;
+
+    // Bounds how long a document changed by another instance is served stale
+    private Duration ttl = Duration.ofMinutes(5);
+
+    // Evictions are published to the other instances through this capped
+    // collection, which every instance tails
+    private boolean invalidationEnabled = true;
+
+    private String invalidationCollection = "cacheInvalidations";
+
+    private DataSize invalidationCollectionSize = DataSize.ofMegabytes(4);
+
+    private long invalidationMaxEvents = 1000;
+
+    // Evictions published within the window, up to the batch size, are
+    // written as one event
+    private int invalidationBatchSize = 256;
+
+    private Duration invalidationBatchWindow = Duration.ofMillis(20);
+
+    // Wait before tailing again after the cursor was lost
+    private Duration invalidationRetryDelay = Duration.ofSeconds(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isInvalidationEnabled() {
+        return invalidationEnabled;
+    }
+
+    public void setInvalidationEnabled(boolean invalidationEnabled) {
+        this.invalidationEnabled = invalidationEnabled;
+    }
+
+    public String getInvalidationCollection() {
+        return invalidationCollection;
+    }
+
+    public void setInvalidationCollection(String invalidationCollection) {
+        this.invalidationCollection = invalidationCollection;
+    }
+
+    public DataSize getInvalidationCollectionSize() {
+        return invalidationCollectionSize;
+    }
+
+    public void setInvalidationCollectionSize(DataSize invalidationCollectionSize) {
+        this.invalidationCollectionSize = invalidationCollectionSize;
+    }
+
+    public long getInvalidationMaxEvents() {
+        return invalidationMaxEvents;
+    }
+
+    public void setInvalidationMaxEvents(long invalidationMaxEvents) {
+        this.invalidationMaxEvents = invalidationMaxEvents;
+    }
+
+    public int getInvalidationBatchSize() {
+        return invalidationBatchSize;
+    }
+
+    public void setInvalidationBatchSize(int invalidationBatchSize) {
+        this.invalidationBatchSize = invalidationBatchSize;
+    }
+
+    public Duration getInvalidationBatchWindow() {
+        return invalidationBatchWindow;
+    }
+
+    public void setInvalidationBatchWindow(Duration invalidationBatchWindow) {
+        this.invalidationBatchWindow = invalidationBatchWindow;
+    }
+
+    public Duration getInvalidationRetryDelay() {
+        return invalidationRetryDelay;
+    }
+
+    public void setInvalidationRetryDelay(Duration invalidationRetryDelay) {
+        this.invalidationRetryDelay = invalidationRetryDelay;
+    }
+}
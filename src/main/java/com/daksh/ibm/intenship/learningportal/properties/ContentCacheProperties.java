@@ -0,0 +1,68 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+
+/**
+ * Local disk cache of lecture content
+ */
+@ConfigurationProperties(prefix = "content.cache")
+public class ContentCacheProperties {
+    private boolean enabled = true;
+
+    // The directory is emptied on startup, so it must only be used by the cache
+    private String directory = Paths.get(System.getProperty("java.io.tmpdir"),
+            "learning-portal", "content-cache").toString();
+
+    // Total size of the cached files. Entries are evicted by Caffeine's
+    // W-TinyLFU policy when the cache grows beyond it
+    private DataSize maxSize = DataSize.ofGigabytes(10);
+
+    // Larger objects are always streamed from S3
+    private DataSize maxEntrySize = DataSize.ofGigabytes(2);
+
+    // Cached files are served as memory-mapped regions of this size
+    private DataSize mapChunkSize = DataSize.ofMegabytes(4);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public DataSize getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(DataSize maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public DataSize getMapChunkSize() {
+        return mapChunkSize;
+    }
+
+    public void setMapChunkSize(DataSize mapChunkSize) {
+        this.mapChunkSize = mapChunkSize;
+    }
+}
@@ -0,0 +1,31 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Page sizes of the catalog listings
+ */
+@ConfigurationProperties(prefix = "pagination")
+public class PaginationProperties {
+    // Used when the request has no limit
+    private int pageSize = 50;
+
+    // Larger limits are lowered to it
+    private int maxPageSize = 500;
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+}
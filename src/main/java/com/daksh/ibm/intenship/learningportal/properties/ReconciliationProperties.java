@@ -0,0 +1,57 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Reconciliation of the bucket against the content referenced in Mongo
+ */
+@ConfigurationProperties(prefix = "reconciliation")
+public class ReconciliationProperties {
+    // Uploads write S3 before Mongo, so objects modified this recently may
+    // still be referenced and are not reported as orphaned
+    private Duration gracePeriod = Duration.ofHours(1);
+
+    // Keys of one ListObjectsV2 page, and documents of one cursor batch.
+    // S3 lists at most 1000 keys per page
+    private int pageSize = 1000;
+
+    // Keys read ahead of the merge from each side
+    private int prefetch = 1024;
+
+    // Orphaned objects and dangling references listed in the report
+    private int sampleSize = 100;
+
+    public Duration getGracePeriod() {
+        return gracePeriod;
+    }
+
+    public void setGracePeriod(Duration gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+}
@@ -1,11 +1,17 @@
 package com.daksh.ibm.intenship.learningportal.properties;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
 import software.amazon.awssdk.regions.Region;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 
 @ConfigurationProperties(prefix = "aws.s3")
-public class S3ClientConfigurationProperties {
+public class S3ClientConfigurationProperties implements Validator {
     private String accessKeyId;
     private String secretAccessKey;
     private String sessionToken;
@@ -18,9 +24,108 @@ public class S3ClientConfigurationProperties {
     // define a configuration property for that
     private int multipartMinPartSize = 5*1024*1024;
 
+    // Upper bound for the part size picked for a single upload. Parts are held in
+    // memory while they upload, so this also bounds the memory used per part
+    private int multipartMaxPartSize = 128*1024*1024;
+
+    // S3 accepts at most 10000 parts per multipart upload
+    private int multipartMaxParts = 10000;
+
+    // When the file size is not known up front, the part size doubles after
+    // every multipartPartSizeGrowthInterval parts, up to multipartMaxPartSize
+    private int multipartPartSizeGrowthInterval = 1000;
+
+    // Number of parts of a single file that may be uploading at the same time.
+    // Each in-flight part holds one part buffer in memory, so the memory used by
+    // an upload is roughly (in-flight parts + 1) * part size
+    private int multipartMaxInFlightParts = 8;
+
+    // Memory the in-flight parts of a single upload may hold. Uploads whose parts
+    // may grow large keep fewer parts in flight, at least one, so an upload holds
+    // at most this plus the part being buffered. Without it the ceiling would be
+    // (multipartMaxInFlightParts + 1) * multipartMaxPartSize, about 1 GiB
+    private long multipartMaxInFlightBytes = 512L*1024*1024;
+
+    // Resumable upload sessions that have not received a part for this long
+    // are aborted, so their parts do not stay around in the bucket
+    private Duration uploadSessionTtl = Duration.ofHours(24);
+
+    private Duration uploadSessionSweepInterval = Duration.ofMinutes(10);
+
+    // A request uploading into a session holds it for this long after its last
+    // part, so a request that died does not keep the session from being resumed
+    private Duration uploadSessionLease = Duration.ofMinutes(5);
+
+    // Objects no longer referenced are queued in Mongo and deleted in the
+    // background, with one DeleteObjects per batch. S3 deletes at most 1000
+    // keys per DeleteObjects
+    private Duration deletionInterval = Duration.ofSeconds(10);
+
+    private int deletionBatchSize = 1000;
+
+    private int deletionConcurrency = 4;
+
+    // A batch taken by an instance is not taken by the others for this long,
+    // and is taken again after it if the instance did not finish it
+    private Duration deletionLease = Duration.ofMinutes(5);
+
+    // Failed deletes are retried after deletionRetryDelay, doubled on every
+    // attempt up to deletionMaxRetryDelay
+    private Duration deletionRetryDelay = Duration.ofSeconds(30);
+
+    private Duration deletionMaxRetryDelay = Duration.ofHours(1);
+
+    // Concurrent downloads of the same object share one GetObject, read at the pace
+    // of the slowest request. At most this many buffers are read ahead of it; a
+    // request joining after the first buffer makes its own request
+    private int downloadSharedPrefetch = 32;
+
+    // Full downloads of objects at least this large are fetched as ranges of
+    // parallelDownloadPartSize over parallelDownloadConcurrency connections. 0 disables it
+    private long parallelDownloadThreshold = 64*1024*1024;
+
+    private long parallelDownloadPartSize = 8*1024*1024;
+
+    private int parallelDownloadConcurrency = 4;
+
+    // Buffers read ahead for each range while an earlier range is being sent
+    private int parallelDownloadPrefetch = 32;
+
+    // Downloads are answered with a redirect to a presigned S3 URL instead of
+    // being streamed through the service, except for presignProxyContentTypes
+    private boolean presignDownloads = false;
+
+    private Duration presignDuration = Duration.ofMinutes(15);
+
+    // Presigned URLs are reused until this long before they expire. Must be
+    // shorter than presignDuration
+    private Duration presignRenewBefore = Duration.ofMinutes(2);
+
+    // Media types, wildcards allowed, that are still streamed through the service
+    private List<String> presignProxyContentTypes = new ArrayList<>();
+
     public S3ClientConfigurationProperties() {
     }
 
+    @Override
+    public boolean supports(Class<?> type) {
+        return S3ClientConfigurationProperties.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Checks the properties once they are bound, so a bad configuration fails
+     * the startup with the name of the property
+     */
+    @Override
+    public void validate(Object target, Errors errors) {
+        S3ClientConfigurationProperties properties = (S3ClientConfigurationProperties) target;
+        if (properties.presignRenewBefore.compareTo(properties.presignDuration) >= 0)
+            errors.rejectValue("presignRenewBefore", "presignRenewBefore.tooLong",
+                    "aws.s3.presign_renew_before (" + properties.presignRenewBefore
+                            + ") must be shorter than aws.s3.presign_duration (" + properties.presignDuration
+                            + "), or presigned URLs would expire before they are renewed");
+    }
+
     public S3ClientConfigurationProperties(String accessKeyId, String secretAccessKey, String sessionToken, Region region, String bucket, String url) {
         this.accessKeyId = accessKeyId;
         this.secretAccessKey = secretAccessKey;
@@ -81,4 +186,192 @@ public class S3ClientConfigurationProperties {
     public int getMultipartMinPartSize() {
         return multipartMinPartSize;
     }
+
+    public void setMultipartMinPartSize(int multipartMinPartSize) {
+        this.multipartMinPartSize = multipartMinPartSize;
+    }
+
+    public int getMultipartMaxPartSize() {
+        return multipartMaxPartSize;
+    }
+
+    public void setMultipartMaxPartSize(int multipartMaxPartSize) {
+        this.multipartMaxPartSize = multipartMaxPartSize;
+    }
+
+    public int getMultipartMaxParts() {
+        return multipartMaxParts;
+    }
+
+    public void setMultipartMaxParts(int multipartMaxParts) {
+        this.multipartMaxParts = multipartMaxParts;
+    }
+
+    public int getMultipartPartSizeGrowthInterval() {
+        return multipartPartSizeGrowthInterval;
+    }
+
+    public void setMultipartPartSizeGrowthInterval(int multipartPartSizeGrowthInterval) {
+        this.multipartPartSizeGrowthInterval = multipartPartSizeGrowthInterval;
+    }
+
+    public int getMultipartMaxInFlightParts() {
+        return multipartMaxInFlightParts;
+    }
+
+    public void setMultipartMaxInFlightParts(int multipartMaxInFlightParts) {
+        this.multipartMaxInFlightParts = multipartMaxInFlightParts;
+    }
+
+    public long getMultipartMaxInFlightBytes() {
+        return multipartMaxInFlightBytes;
+    }
+
+    public void setMultipartMaxInFlightBytes(long multipartMaxInFlightBytes) {
+        this.multipartMaxInFlightBytes = multipartMaxInFlightBytes;
+    }
+
+    public Duration getUploadSessionTtl() {
+        return uploadSessionTtl;
+    }
+
+    public void setUploadSessionTtl(Duration uploadSessionTtl) {
+        this.uploadSessionTtl = uploadSessionTtl;
+    }
+
+    public Duration getUploadSessionSweepInterval() {
+        return uploadSessionSweepInterval;
+    }
+
+    public void setUploadSessionSweepInterval(Duration uploadSessionSweepInterval) {
+        this.uploadSessionSweepInterval = uploadSessionSweepInterval;
+    }
+
+    public Duration getUploadSessionLease() {
+        return uploadSessionLease;
+    }
+
+    public void setUploadSessionLease(Duration uploadSessionLease) {
+        this.uploadSessionLease = uploadSessionLease;
+    }
+
+    public Duration getDeletionInterval() {
+        return deletionInterval;
+    }
+
+    public void setDeletionInterval(Duration deletionInterval) {
+        this.deletionInterval = deletionInterval;
+    }
+
+    public int getDeletionBatchSize() {
+        return deletionBatchSize;
+    }
+
+    public void setDeletionBatchSize(int deletionBatchSize) {
+        this.deletionBatchSize = deletionBatchSize;
+    }
+
+    public int getDeletionConcurrency() {
+        return deletionConcurrency;
+    }
+
+    public void setDeletionConcurrency(int deletionConcurrency) {
+        this.deletionConcurrency = deletionConcurrency;
+    }
+
+    public Duration getDeletionLease() {
+        return deletionLease;
+    }
+
+    public void setDeletionLease(Duration deletionLease) {
+        this.deletionLease = deletionLease;
+    }
+
+    public Duration getDeletionRetryDelay() {
+        return deletionRetryDelay;
+    }
+
+    public void setDeletionRetryDelay(Duration deletionRetryDelay) {
+        this.deletionRetryDelay = deletionRetryDelay;
+    }
+
+    public Duration getDeletionMaxRetryDelay() {
+        return deletionMaxRetryDelay;
+    }
+
+    public void setDeletionMaxRetryDelay(Duration deletionMaxRetryDelay) {
+        this.deletionMaxRetryDelay = deletionMaxRetryDelay;
+    }
+
+    public int getDownloadSharedPrefetch() {
+        return downloadSharedPrefetch;
+    }
+
+    public void setDownloadSharedPrefetch(int downloadSharedPrefetch) {
+        this.downloadSharedPrefetch = downloadSharedPrefetch;
+    }
+
+    public boolean isPresignDownloads() {
+        return presignDownloads;
+    }
+
+    public void setPresignDownloads(boolean presignDownloads) {
+        this.presignDownloads = presignDownloads;
+    }
+
+    public Duration getPresignDuration() {
+        return presignDuration;
+    }
+
+    public void setPresignDuration(Duration presignDuration) {
+        this.presignDuration = presignDuration;
+    }
+
+    public Duration getPresignRenewBefore() {
+        return presignRenewBefore;
+    }
+
+    public void setPresignRenewBefore(Duration presignRenewBefore) {
+        this.presignRenewBefore = presignRenewBefore;
+    }
+
+    public List<String> getPresignProxyContentTypes() {
+        return presignProxyContentTypes;
+    }
+
+    public void setPresignProxyContentTypes(List<String> presignProxyContentTypes) {
+        this.presignProxyContentTypes = presignProxyContentTypes;
+    }
+
+    public long getParallelDownloadThreshold() {
+        return parallelDownloadThreshold;
+    }
+
+    public void setParallelDownloadThreshold(long parallelDownloadThreshold) {
+        this.parallelDownloadThreshold = parallelDownloadThreshold;
+    }
+
+    public long getParallelDownloadPartSize() {
+        return parallelDownloadPartSize;
+    }
+
+    public void setParallelDownloadPartSize(long parallelDownloadPartSize) {
+        this.parallelDownloadPartSize = parallelDownloadPartSize;
+    }
+
+    public int getParallelDownloadConcurrency() {
+        return parallelDownloadConcurrency;
+    }
+
+    public void setParallelDownloadConcurrency(int parallelDownloadConcurrency) {
+        this.parallelDownloadConcurrency = parallelDownloadConcurrency;
+    }
+
+    public int getParallelDownloadPrefetch() {
+        return parallelDownloadPrefetch;
+    }
+
+    public void setParallelDownloadPrefetch(int parallelDownloadPrefetch) {
+        this.parallelDownloadPrefetch = parallelDownloadPrefetch;
+    }
 }
@@ -3,5 +3,5 @@ package com.daksh.ibm.intenship.learningportal.repository;
 import com.daksh.ibm.intenship.learningportal.model.Course;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 
-public interface CourseRepository extends ReactiveMongoRepository<Course, String> {
+public interface CourseRepository extends ReactiveMongoRepository<Course, String>, CourseRepositoryCustom {
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes of courses that keep the course counts of their categories. The
+ * previous version of a course is read by the same operation that replaces
+ * or removes it, so each category count changes once per change of course.
+ */
+public interface CourseRepositoryCustom {
+
+    /**
+     * Inserts or replaces the course, counting it in the categories it was
+     * added to and no longer in the ones it was removed from. The stored lecture
+     * id counter is kept, and moved past the ids of the lectures the course holds
+     * @param course
+     * @return Mono of the saved course
+     */
+    Mono<Course> saveCourse(Course course);
+
+    /**
+     * Deletes the course and no longer counts it in its categories
+     * @param id
+     * @return Mono of the deleted course, empty if there was none
+     */
+    Mono<Course> deleteCourse(String id);
+
+    /**
+     * Deletes all courses and resets the course counts of all categories
+     * @return Mono signalling completion
+     */
+    Mono<Void> deleteAllCourses();
+}
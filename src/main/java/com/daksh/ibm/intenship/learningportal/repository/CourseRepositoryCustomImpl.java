@@ -0,0 +1,115 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.Category;
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.utils.CatalogCache;
+import com.daksh.ibm.intenship.learningportal.utils.SearchKeywords;
+import org.bson.Document;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class CourseRepositoryCustomImpl implements CourseRepositoryCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final CatalogCache catalogCache;
+
+    public CourseRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate, CatalogCache catalogCache) {
+        this.mongoTemplate = mongoTemplate;
+        this.catalogCache = catalogCache;
+    }
+
+    @Override
+    public Mono<Course> saveCourse(Course course) {
+        if (course.getId() == null)
+            return mongoTemplate.insert(course)
+                    .flatMap(saved -> saved.nextLectureId() == 0 ? Mono.just(saved)
+                            : mongoTemplate.updateFirst(query(where("_id").is(saved.getId())),
+                                    new Update().max("count", saved.nextLectureId()), Course.class)
+                                    .thenReturn(saved))
+                    .flatMap(saved -> count(categories(saved), 1).thenReturn(saved))
+                    .doOnSuccess(saved -> catalogCache.evictCourse(course.getId()));
+
+        return mongoTemplate.findAndModify(query(where("_id").is(course.getId())), replacement(course),
+                FindAndModifyOptions.options().upsert(true), Course.class)
+                .map(CourseRepositoryCustomImpl::categories)
+                .defaultIfEmpty(Collections.emptySet())
+                .flatMap(previous -> {
+                    Set<String> added = categories(course);
+                    Set<String> removed = new HashSet<>(previous);
+                    removed.removeAll(added);
+                    added.removeAll(previous);
+                    return count(added, 1).then(count(removed, -1));
+                })
+                .thenReturn(course)
+                .doOnSuccess(saved -> catalogCache.evictCourse(course.getId()));
+    }
+
+    @Override
+    public Mono<Course> deleteCourse(String id) {
+        return mongoTemplate.findAndRemove(query(where("_id").is(id)), Course.class)
+                .flatMap(removed -> count(categories(removed), -1).thenReturn(removed))
+                .doOnSuccess(removed -> catalogCache.evictCourse(id));
+    }
+
+    @Override
+    public Mono<Void> deleteAllCourses() {
+        return mongoTemplate.remove(new Query(), Course.class)
+                .then(mongoTemplate.updateMulti(new Query(), new Update().set("courseCount", 0), Category.class))
+                .then()
+                .doOnSuccess(done -> catalogCache.evictAll());
+    }
+
+    /**
+     * Replaces every field of the course but the lecture id counter, which is
+     * only moved past the ids of the lectures the course holds. The counter the
+     * course was read with may be behind the one stored
+     * @param course
+     * @return Update setting the fields written for the course and unsetting the others
+     */
+    private Update replacement(Course course) {
+        // Updates skip the before convert callbacks
+        SearchKeywords.set(course);
+        Document document = new Document();
+        mongoTemplate.getConverter().write(course, document);
+
+        Update update = new Update();
+        mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Course.class)
+                .doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+                    String field = property.getFieldName();
+                    if (property.isIdProperty() || property.isTransient() || field.equals("count"))
+                        return;
+                    if (document.containsKey(field))
+                        update.set(field, document.get(field));
+                    else
+                        update.unset(field);
+                });
+        return update.max("count", course.nextLectureId());
+    }
+
+    private Mono<Void> count(Collection<String> categories, int change) {
+        if (categories.isEmpty())
+            return Mono.empty();
+
+        return mongoTemplate.updateMulti(query(where("_id").in(categories)),
+                new Update().inc("courseCount", change), Category.class)
+                .then()
+                .doOnSuccess(done -> catalogCache.evictCategories(categories));
+    }
+
+    private static Set<String> categories(Course course) {
+        return course.getCategories() == null ? new HashSet<>() : new HashSet<>(course.getCategories());
+    }
+}
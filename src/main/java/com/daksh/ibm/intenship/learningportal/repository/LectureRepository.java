@@ -0,0 +1,84 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.CourseSummary;
+import com.daksh.ibm.intenship.learningportal.model.CourseView;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+public interface LectureRepository extends ReactiveMongoRepository<Lecture, String>, LectureRepositoryCustom {
+
+    // Courses completed together by one query of their lectures
+    int BATCH_SIZE = 256;
+
+    Flux<Lecture> findByCourseId(String courseId);
+
+    Flux<Lecture> findByCourseIdIn(Collection<String> courseIds);
+
+    Mono<Void> deleteByCourseId(String courseId);
+
+    default Mono<Lecture> findByCourseIdAndLectureId(String courseId, String lectureId) {
+        return findById(Lecture.key(courseId, lectureId));
+    }
+
+    /**
+     * Sets the lectures of the course, to return them with it
+     * @param course
+     * @return Mono of the course
+     */
+    default Mono<Course> withLectures(Course course) {
+        return findByCourseId(course.getId())
+                .collectMap(Lecture::getId)
+                .map(lectures -> {
+                    course.setLectures(lectures);
+                    return course;
+                });
+    }
+
+    /**
+     * Sets the lectures of the courses, reading them in batches
+     * @param courses
+     * @return Flux of the courses, in their order
+     */
+    default Flux<Course> withLectures(Flux<Course> courses) {
+        return courses.buffer(BATCH_SIZE)
+                .concatMap(batch -> findByCourseIdIn(batch.stream().map(Course::getId).collect(Collectors.toList()))
+                        .collectMultimap(Lecture::getCourseId)
+                        .flatMapIterable(lectures -> {
+                            for (Course course : batch)
+                                course.setLectures(lectures.getOrDefault(course.getId(), Collections.emptyList())
+                                        .stream()
+                                        .collect(Collectors.toMap(Lecture::getId, lecture -> lecture)));
+                            return batch;
+                        }));
+    }
+
+    /**
+     * Summarizes courses, counting their lectures in batches
+     * @param courses courses read with at least the CourseSummary fields
+     * @return Flux of CourseSummary, in the order of the courses
+     */
+    default Flux<CourseSummary> summaries(Flux<Course> courses) {
+        return courses.buffer(BATCH_SIZE)
+                .concatMap(batch -> countByCourseIds(batch.stream().map(Course::getId).collect(Collectors.toList()))
+                        .flatMapIterable(counts -> batch.stream()
+                                .map(course -> new CourseSummary(course, counts.getOrDefault(course.getId(), 0L)))
+                                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Completes courses for a view
+     * @param courses courses read with the fields of the view
+     * @param view
+     * @return Flux of CourseSummary or of Course with its lectures
+     */
+    default Flux<?> view(Flux<Course> courses, CourseView view) {
+        return view == CourseView.SUMMARY ? summaries(courses) : withLectures(courses);
+    }
+}
@@ -0,0 +1,88 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Updates of single lecture content entries. They change only the entries
+ * involved, so concurrent uploads into one lecture do not overwrite each other.
+ */
+public interface LectureRepositoryCustom {
+
+    /**
+     * Adds a content entry to the lecture
+     * @param courseId
+     * @param lectureId
+     * @param url
+     * @param metadata metadata of the content, holding its fileKey
+     * @return Mono of true if the entry was added, false if the lecture does
+     * not exist or already holds the fileKey
+     */
+    Mono<Boolean> addContent(String courseId, String lectureId, String url, ContentMetadata metadata);
+
+    /**
+     * Removes a content entry from the lecture
+     * @param courseId
+     * @param lectureId
+     * @param fileKey
+     * @return Mono of true if the entry was removed, false if the lecture does not hold it
+     */
+    Mono<Boolean> removeContent(String courseId, String lectureId, String fileKey);
+
+    /**
+     * Sets the name, description and duration of the lecture, leaving its
+     * content entries as they are
+     * @param courseId
+     * @param lectureId
+     * @param lecture holds the new values
+     * @return Mono of the updated lecture, or an empty Mono if it does not exist
+     */
+    Mono<Lecture> updateDetails(String courseId, String lectureId, Lecture lecture);
+
+    /**
+     * Deletes the lecture
+     * @param courseId
+     * @param lectureId
+     * @return Mono of the lecture as it was deleted, holding the content entries
+     * it had then, or an empty Mono if it does not exist
+     */
+    Mono<Lecture> removeLecture(String courseId, String lectureId);
+
+    /**
+     * Sets the lectures of the course: each lecture is replaced by key, inserting
+     * it if it is new, and only then are the lectures it no longer holds deleted,
+     * so the course keeps its lectures while they are written
+     * @param courseId
+     * @param lectures lectures keyed by lecture id
+     * @return Flux of the fileKeys the replaced and deleted lectures held before,
+     * one per content entry
+     */
+    Flux<String> replaceLectures(String courseId, Map<String, Lecture> lectures);
+
+    /**
+     * Deletes the lectures of the course, each with its own findAndRemove, so
+     * the content entries released are the ones each lecture had when it was
+     * removed
+     * @param courseId
+     * @return Flux of the fileKeys of the removed lectures, one per content entry
+     */
+    Flux<String> removeByCourseId(String courseId);
+
+    /**
+     * Deletes all lectures, each with its own findAndRemove
+     * @return Flux of the fileKeys of the removed lectures, one per content entry
+     */
+    Flux<String> removeAllLectures();
+
+    /**
+     * Counts the lectures of each course with one aggregation
+     * @param courseIds
+     * @return Mono of the counts keyed by course id. Courses without lectures are left out
+     */
+    Mono<Map<String, Long>> countByCourseIds(Collection<String> courseIds);
+}
@@ -0,0 +1,121 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.utils.SearchKeywords;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class LectureRepositoryCustomImpl implements LectureRepositoryCustom {
+
+    // Lectures removed at the same time
+    private static final int REMOVE_CONCURRENCY = 16;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public LectureRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Boolean> addContent(String courseId, String lectureId, String url, ContentMetadata metadata) {
+        String fileKey = metadata.getFileKey();
+        return mongoTemplate.updateFirst(
+                query(where("_id").is(Lecture.key(courseId, lectureId))
+                        .and("contentUrls." + fileKey).exists(false)),
+                new Update()
+                        .set("contentUrls." + fileKey, url)
+                        .set("contentMetadata." + fileKey, metadata),
+                Lecture.class)
+                .map(result -> result.getModifiedCount() > 0);
+    }
+
+    @Override
+    public Mono<Boolean> removeContent(String courseId, String lectureId, String fileKey) {
+        return mongoTemplate.updateFirst(
+                query(where("_id").is(Lecture.key(courseId, lectureId))
+                        .and("contentUrls." + fileKey).exists(true)),
+                new Update()
+                        .unset("contentUrls." + fileKey)
+                        .unset("contentMetadata." + fileKey),
+                Lecture.class)
+                .map(result -> result.getModifiedCount() > 0);
+    }
+
+    @Override
+    public Mono<Lecture> updateDetails(String courseId, String lectureId, Lecture lecture) {
+        return mongoTemplate.findAndModify(query(where("_id").is(Lecture.key(courseId, lectureId))),
+                new Update()
+                        .set("name", lecture.getName())
+                        .set("description", lecture.getDescription())
+                        .set("duration", lecture.getDuration())
+                        .set("keywords", SearchKeywords.words(lecture.getName())),
+                FindAndModifyOptions.options().returnNew(true),
+                Lecture.class);
+    }
+
+    @Override
+    public Mono<Lecture> removeLecture(String courseId, String lectureId) {
+        return mongoTemplate.findAndRemove(query(where("_id").is(Lecture.key(courseId, lectureId))), Lecture.class);
+    }
+
+    @Override
+    public Flux<String> replaceLectures(String courseId, Map<String, Lecture> lectures) {
+        Map<String, Lecture> replacements = lectures == null ? Collections.emptyMap() : lectures;
+        replacements.forEach((lectureId, lecture) -> lecture.assign(courseId, lectureId));
+        List<String> keys = replacements.values().stream().map(Lecture::getKey).collect(Collectors.toList());
+
+        Flux<Lecture> replaced = Flux.fromIterable(replacements.values())
+                .flatMap(lecture -> mongoTemplate.findAndReplace(query(where("_id").is(lecture.getKey())), lecture,
+                        FindAndReplaceOptions.options().upsert()), REMOVE_CONCURRENCY);
+        return fileKeys(replaced.concatWith(remove(query(where("courseId").is(courseId).and("_id").nin(keys)))));
+    }
+
+    @Override
+    public Flux<String> removeByCourseId(String courseId) {
+        return fileKeys(remove(query(where("courseId").is(courseId))));
+    }
+
+    @Override
+    public Flux<String> removeAllLectures() {
+        return fileKeys(remove(new Query()));
+    }
+
+    private Flux<Lecture> remove(Query lectures) {
+        lectures.fields().include("_id");
+        return mongoTemplate.find(lectures, Lecture.class)
+                .flatMap(lecture -> mongoTemplate.findAndRemove(query(where("_id").is(lecture.getKey())),
+                        Lecture.class), REMOVE_CONCURRENCY);
+    }
+
+    private static Flux<String> fileKeys(Flux<Lecture> lectures) {
+        return lectures
+                .filter(lecture -> lecture.getContentUrls() != null)
+                .flatMapIterable(lecture -> lecture.getContentUrls().keySet());
+    }
+
+    @Override
+    public Mono<Map<String, Long>> countByCourseIds(Collection<String> courseIds) {
+        return mongoTemplate.aggregate(Aggregation.newAggregation(Lecture.class,
+                Aggregation.match(where("courseId").in(courseIds)),
+                Aggregation.group("courseId").count().as("count")),
+                Document.class)
+                .collectMap(count -> count.getString("_id"), count -> count.get("count", Number.class).longValue());
+    }
+}
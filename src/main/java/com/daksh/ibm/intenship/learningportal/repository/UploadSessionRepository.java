@@ -0,0 +1,12 @@
+package com.daksh.ibm.intenship.learningportal.repository;
+
+import com.daksh.ibm.intenship.learningportal.model.UploadSession;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.util.Date;
+
+public interface UploadSessionRepository extends ReactiveMongoRepository<UploadSession, String> {
+
+    Flux<UploadSession> findByLastModifiedDateBefore(Date date);
+}
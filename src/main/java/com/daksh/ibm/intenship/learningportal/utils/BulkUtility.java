@@ -0,0 +1,384 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.BulkResult;
+import com.daksh.ibm.intenship.learningportal.model.Category;
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.properties.BulkProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Imports courses and lectures from NDJSON bodies, one record per line. The
+ * records are inserted in batches, each with one unordered bulkWrite, so a
+ * record that cannot be read or written is reported and the others of its
+ * batch are still inserted. Content entries of the lectures must name uploaded
+ * content, or their record is reported.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(BulkProperties.class)
+public class BulkUtility {
+    private static final ResolvableType STRING = ResolvableType.forClass(String.class);
+
+    // Records taking their content references at the same time
+    private static final int ACQUIRE_CONCURRENCY = 16;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final BulkProperties properties;
+    private final StringDecoder lineDecoder;
+    private final CatalogCache catalogCache;
+    private final LectureContent lectureContent;
+
+    public BulkUtility(ReactiveMongoTemplate mongoTemplate, ObjectMapper objectMapper, BulkProperties properties,
+                       CatalogCache catalogCache, LectureContent lectureContent) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.catalogCache = catalogCache;
+        this.lectureContent = lectureContent;
+        this.lineDecoder = StringDecoder.allMimeTypes();
+        this.lineDecoder.setMaxInMemorySize((int) properties.getMaxRecordSize().toBytes());
+    }
+
+    /**
+     * Inserts courses, each with the lectures it holds. Courses without an id
+     * are given one; a course whose id is in use is reported, not replaced
+     * @param body NDJSON of Course
+     * @return Flux of BulkResult, one per batch, in the order of the batches
+     */
+    public Flux<BulkResult> importCourses(Flux<DataBuffer> body) {
+        return batches(body)
+                .flatMapSequential(this::importCourses, properties.getConcurrency());
+    }
+
+    /**
+     * Inserts lectures into the course, giving them the next lecture ids of the
+     * course
+     * @param courseId
+     * @param body NDJSON of Lecture
+     * @return Flux of BulkResult, one per batch, in the order of the batches
+     */
+    public Flux<BulkResult> importLectures(String courseId, Flux<DataBuffer> body) {
+        return batches(body)
+                .flatMapSequential(batch -> importLectures(courseId, batch), properties.getConcurrency());
+    }
+
+    private Flux<List<Tuple2<Long, String>>> batches(Flux<DataBuffer> body) {
+        return lineDecoder.decode(body, STRING, null, null)
+                .filter(line -> !line.trim().isEmpty())
+                .index()
+                .buffer(properties.getBatchSize());
+    }
+
+    private Mono<BulkResult> importCourses(List<Tuple2<Long, String>> batch) {
+        List<BulkResult.RecordError> errors = new ArrayList<>();
+        List<Long> readRecords = new ArrayList<>();
+        List<Course> readCourses = new ArrayList<>();
+
+        for (Tuple2<Long, String> line : batch) {
+            try {
+                Course course = read(line.getT2(), Course.class);
+                if (course.getId() == null)
+                    course.setId(new ObjectId().toHexString());
+                readRecords.add(line.getT1());
+                readCourses.add(course);
+            } catch (JsonProcessingException e) {
+                errors.add(new BulkResult.RecordError(line.getT1(), null, e.getOriginalMessage()));
+            }
+        }
+
+        // The content entries of the lectures take their references before the
+        // courses are written; a course naming unknown content is not imported
+        return acquire(readCourses.stream()
+                .map(course -> LectureContent.fileKeys(course.getLectures()))
+                .collect(Collectors.toList()))
+                .flatMap(unknown -> {
+                    List<Long> records = new ArrayList<>();
+                    List<Course> courses = new ArrayList<>();
+                    List<WriteModel<Document>> inserts = new ArrayList<>();
+                    for (int i = 0; i < readCourses.size(); i++) {
+                        Course course = readCourses.get(i);
+                        if (unknown.containsKey(i)) {
+                            errors.add(new BulkResult.RecordError(readRecords.get(i), course.getId(), unknown.get(i)));
+                            continue;
+                        }
+                        records.add(readRecords.get(i));
+                        courses.add(course);
+                        inserts.add(new InsertOneModel<>(toDocument(course)));
+                    }
+
+                    List<String> ids = courses.stream().map(Course::getId).collect(Collectors.toList());
+                    return bulkWrite(Course.class, inserts, records, ids, errors)
+                            .flatMap(failed -> {
+                                List<Course> inserted = new ArrayList<>();
+                                List<Long> insertedRecords = new ArrayList<>();
+                                List<String> notWritten = new ArrayList<>();
+                                for (int i = 0; i < courses.size(); i++)
+                                    if (failed.contains(i)) {
+                                        notWritten.addAll(LectureContent.fileKeys(courses.get(i).getLectures()));
+                                    } else {
+                                        inserted.add(courses.get(i));
+                                        insertedRecords.add(records.get(i));
+                                    }
+                                // The ids may have been looked up, and cached as missing, before
+                                inserted.forEach(course -> catalogCache.evictCourse(course.getId()));
+                                // The inserted courses are counted in their categories
+                                // even if writing their lectures fails
+                                return lectureContent.giveBack(notWritten)
+                                        .then(insertLectures(inserted, insertedRecords, errors))
+                                        .onErrorResume(error -> countCourses(inserted).then(Mono.error(error)))
+                                        .then(countCourses(inserted))
+                                        .thenReturn(new BulkResult(batch.get(0).getT1(), batch.size(),
+                                                inserted.size(), errors));
+                            });
+                });
+    }
+
+    private Mono<BulkResult> importLectures(String courseId, List<Tuple2<Long, String>> batch) {
+        List<BulkResult.RecordError> errors = new ArrayList<>();
+        List<Long> readRecords = new ArrayList<>();
+        List<Lecture> readLectures = new ArrayList<>();
+
+        for (Tuple2<Long, String> line : batch) {
+            try {
+                readLectures.add(read(line.getT2(), Lecture.class));
+                readRecords.add(line.getT1());
+            } catch (JsonProcessingException e) {
+                errors.add(new BulkResult.RecordError(line.getT1(), null, e.getOriginalMessage()));
+            }
+        }
+
+        return acquire(readLectures.stream().map(LectureContent::fileKeys).collect(Collectors.toList()))
+                .flatMap(unknown -> {
+                    List<Long> records = new ArrayList<>();
+                    List<Lecture> lectures = new ArrayList<>();
+                    for (int i = 0; i < readLectures.size(); i++)
+                        if (unknown.containsKey(i)) {
+                            errors.add(new BulkResult.RecordError(readRecords.get(i), null, unknown.get(i)));
+                        } else {
+                            records.add(readRecords.get(i));
+                            lectures.add(readLectures.get(i));
+                        }
+                    if (lectures.isEmpty())
+                        return Mono.just(new BulkResult(batch.get(0).getT1(), batch.size(), 0, errors));
+
+                    return addLectures(courseId, lectures, records, errors)
+                            .map(inserted -> new BulkResult(batch.get(0).getT1(), batch.size(), inserted, errors));
+                });
+    }
+
+    /**
+     * Inserts lectures into the course with one bulkWrite, taking their ids from
+     * the course counter at once. The references of the lectures not inserted
+     * are given back
+     * @param courseId
+     * @param lectures
+     * @param records record of each lecture
+     * @param errors receives the errors of the lectures not inserted
+     * @return Mono of the number of lectures inserted
+     */
+    private Mono<Integer> addLectures(String courseId, List<Lecture> lectures, List<Long> records,
+                                      List<BulkResult.RecordError> errors) {
+        return mongoTemplate.findAndModify(query(where("_id").is(courseId)),
+                new Update().inc("count", lectures.size()),
+                FindAndModifyOptions.options().returnNew(true),
+                Course.class)
+                .doOnSuccess(course -> catalogCache.evictCourse(courseId))
+                .flatMap(course -> {
+                    int firstId = course.getCount() - lectures.size();
+                    List<WriteModel<Document>> inserts = new ArrayList<>();
+                    for (int i = 0; i < lectures.size(); i++) {
+                        lectures.get(i).assign(courseId, Integer.toString(firstId + i));
+                        inserts.add(new InsertOneModel<>(toDocument(lectures.get(i))));
+                    }
+                    return bulkWrite(Lecture.class, inserts, records,
+                            lectures.stream().map(Lecture::getId).collect(Collectors.toList()), errors)
+                            .flatMap(failed -> lectureContent.giveBack(failed.stream()
+                                    .flatMap(i -> LectureContent.fileKeys(lectures.get(i)).stream())
+                                    .collect(Collectors.toList()))
+                                    .thenReturn(lectures.size() - failed.size()));
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    for (Long record : records)
+                        errors.add(new BulkResult.RecordError(record, null, "Course: " + courseId + " not found!"));
+                    return lectureContent.giveBack(lectures.stream()
+                            .flatMap(lecture -> LectureContent.fileKeys(lecture).stream())
+                            .collect(Collectors.toList()))
+                            .thenReturn(0);
+                }));
+    }
+
+    /**
+     * Takes the references of the content entries of each record
+     * @param fileKeys content entries of each record
+     * @return Mono of the errors of the records whose entries are not all
+     * indexed, keyed by their index. They hold no references
+     */
+    private Mono<Map<Integer, String>> acquire(List<List<String>> fileKeys) {
+        return Flux.range(0, fileKeys.size())
+                .flatMap(i -> lectureContent.acquire(fileKeys.get(i))
+                        .then(Mono.<Tuple2<Integer, String>>empty())
+                        .onErrorResume(LectureContent.UnknownContentException.class,
+                                e -> Mono.just(Tuples.of(i, e.getMessage()))), ACQUIRE_CONCURRENCY)
+                .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
+    /**
+     * Writes the models with one unordered bulkWrite
+     * @param type entity type of the collection
+     * @param models
+     * @param records record of each model
+     * @param ids id of each model, to report errors with
+     * @param errors receives the errors of the models that failed
+     * @return Mono of the indexes of the models that failed
+     */
+    private Mono<Set<Integer>> bulkWrite(Class<?> type, List<WriteModel<Document>> models,
+                                                  List<Long> records, List<String> ids,
+                                                  List<BulkResult.RecordError> errors) {
+        if (models.isEmpty())
+            return Mono.just(Collections.emptySet());
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(type))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(models, new BulkWriteOptions().ordered(false))))
+                .map(result -> Collections.<Integer>emptySet())
+                .onErrorResume(MongoBulkWriteException.class, e -> {
+                    Set<Integer> failed = recordErrors(e, records, ids, errors);
+                    log.info("[I164] {} of {} records not written to {}",
+                            failed.size(), models.size(), type.getSimpleName());
+                    return Mono.just(failed);
+                });
+    }
+
+    /**
+     * Reports the models a bulkWrite failed to write as errors of their records
+     * @param e
+     * @param records record of each model
+     * @param ids id of each model
+     * @param errors receives one error per failed model
+     * @return indexes of the models that failed
+     */
+    static Set<Integer> recordErrors(MongoBulkWriteException e, List<Long> records, List<String> ids,
+                                     List<BulkResult.RecordError> errors) {
+        Set<Integer> failed = new HashSet<>();
+        for (BulkWriteError error : e.getWriteErrors()) {
+            failed.add(error.getIndex());
+            errors.add(new BulkResult.RecordError(records.get(error.getIndex()),
+                    ids.get(error.getIndex()), error.getMessage()));
+        }
+        return failed;
+    }
+
+    /**
+     * Saves the lectures held by the inserted courses, with one unordered
+     * bulkWrite. They are replaced by key, so a lecture stored under the same key
+     * is overwritten; other lectures are left as they are. A lecture that cannot
+     * be written is reported under the record of its course, and the references
+     * of its content entries are given back
+     * @param courses
+     * @param records record of each course
+     * @param errors receives the errors of the lectures that failed
+     * @return Mono signalling completion
+     */
+    private Mono<Void> insertLectures(List<Course> courses, List<Long> records, List<BulkResult.RecordError> errors) {
+        List<Lecture> lectures = new ArrayList<>();
+        List<Long> lectureRecords = new ArrayList<>();
+        List<WriteModel<Document>> replacements = new ArrayList<>();
+        for (int i = 0; i < courses.size(); i++) {
+            Course course = courses.get(i);
+            if (course.getLectures() == null)
+                continue;
+            for (Map.Entry<String, Lecture> entry : course.getLectures().entrySet()) {
+                Lecture lecture = entry.getValue();
+                lecture.assign(course.getId(), entry.getKey());
+                lectures.add(lecture);
+                lectureRecords.add(records.get(i));
+                replacements.add(new ReplaceOneModel<>(Filters.eq("_id", lecture.getKey()), toDocument(lecture),
+                        new ReplaceOptions().upsert(true)));
+            }
+        }
+
+        return bulkWrite(Lecture.class, replacements, lectureRecords,
+                lectures.stream().map(Lecture::getKey).collect(Collectors.toList()), errors)
+                .flatMap(failed -> lectureContent.giveBack(failed.stream()
+                        .flatMap(i -> LectureContent.fileKeys(lectures.get(i)).stream())
+                        .collect(Collectors.toList())));
+    }
+
+    // Counts the inserted courses in their categories, with one $inc per category
+    private Mono<Void> countCourses(List<Course> courses) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Course course : courses)
+            if (course.getCategories() != null)
+                for (String category : new HashSet<>(course.getCategories()))
+                    counts.merge(category, 1, Integer::sum);
+
+        return Flux.fromIterable(counts.entrySet())
+                .flatMap(count -> mongoTemplate.updateFirst(query(where("_id").is(count.getKey())),
+                        new Update().inc("courseCount", count.getValue()), Category.class))
+                .then()
+                .doOnSuccess(done -> catalogCache.evictCategories(counts.keySet()));
+    }
+
+    private <T> T read(String line, Class<T> type) throws JsonProcessingException {
+        T record = objectMapper.readValue(line, type);
+        if (record == null)
+            throw new JsonMappingException(null, "Record is null");
+        return record;
+    }
+
+    private Document toDocument(Lecture lecture) {
+        SearchKeywords.set(lecture);
+        Document document = new Document();
+        mongoTemplate.getConverter().write(lecture, document);
+        return document;
+    }
+
+    private Document toDocument(Course course) {
+        SearchKeywords.set(course);
+        Document document = new Document();
+        mongoTemplate.getConverter().write(course, document);
+
+        // Lecture ids are taken from the course counter, so it must not hand
+        // out the ids of the imported lectures again
+        document.put("count", course.nextLectureId());
+        return document;
+    }
+}
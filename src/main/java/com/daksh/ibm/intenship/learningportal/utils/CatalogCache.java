@@ -0,0 +1,180 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Category;
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.properties.CatalogCacheProperties;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-through cache of course and category documents by id. Documents are
+ * loaded asynchronously, once for concurrent requests of the same id, and
+ * documents that do not exist are cached too. Every write of a course or
+ * category must evict it.
+ *
+ * The BSON documents are cached, and each read converts a new entity from
+ * them, so callers can change what they get.
+ *
+ * Evictions are published to the other instances through the InvalidationBus,
+ * and the ones they publish are applied here.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(CatalogCacheProperties.class)
+public class CatalogCache {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final CatalogCacheProperties properties;
+    private final AsyncCache<String, Optional<Document>> courses;
+    private final AsyncCache<String, Optional<Document>> categories;
+    private final InvalidationBus invalidationBus;
+
+    private Disposable invalidations;
+
+    public CatalogCache(ReactiveMongoTemplate mongoTemplate, CatalogCacheProperties properties,
+                        InvalidationBus invalidationBus) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+        this.invalidationBus = invalidationBus;
+        this.courses = newCache(properties);
+        this.categories = newCache(properties);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!invalidationBus.isEnabled())
+            return;
+
+        invalidations = invalidationBus.invalidations()
+                .subscribe(this::apply);
+        log.info("[I66] following cache invalidations of the other instances");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (invalidations != null)
+            invalidations.dispose();
+    }
+
+    private static AsyncCache<String, Optional<Document>> newCache(CatalogCacheProperties properties) {
+        return Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Mono<Course> findCourse(String id) {
+        return find(courses, Course.class, id);
+    }
+
+    public Mono<Boolean> courseExists(String id) {
+        return exists(courses, Course.class, id);
+    }
+
+    public Mono<Category> findCategory(String id) {
+        return find(categories, Category.class, id);
+    }
+
+    public Mono<Boolean> categoryExists(String id) {
+        return exists(categories, Category.class, id);
+    }
+
+    public void evictCourse(String id) {
+        courses.synchronous().invalidate(id);
+        invalidationBus.publish(InvalidationBus.Invalidation.courses(Collections.singleton(id)));
+    }
+
+    public void evictCategories(Collection<String> ids) {
+        ids.forEach(categories.synchronous()::invalidate);
+        invalidationBus.publish(InvalidationBus.Invalidation.categories(ids));
+    }
+
+    public void evictCategory(String id) {
+        evictCategories(Collections.singleton(id));
+    }
+
+    public void evictAll() {
+        courses.synchronous().invalidateAll();
+        categories.synchronous().invalidateAll();
+        invalidationBus.publish(InvalidationBus.Invalidation.ALL);
+    }
+
+    // Applies evictions published by another instance, without publishing them again
+    private void apply(InvalidationBus.Invalidation invalidation) {
+        if (invalidation.isAll()) {
+            courses.synchronous().invalidateAll();
+            categories.synchronous().invalidateAll();
+            return;
+        }
+        courses.synchronous().invalidateAll(invalidation.getCourses());
+        categories.synchronous().invalidateAll(invalidation.getCategories());
+    }
+
+    /**
+     * Returns the statistics of the course and category caches
+     * @return statistics keyed by cache name
+     */
+    public Map<String, Map<String, Number>> stats() {
+        Map<String, Map<String, Number>> stats = new LinkedHashMap<>();
+        stats.put("courses", stats(courses));
+        stats.put("categories", stats(categories));
+        return stats;
+    }
+
+    private static Map<String, Number> stats(AsyncCache<String, Optional<Document>> cache) {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("size", cache.synchronous().estimatedSize());
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        values.put("loadFailures", stats.loadFailureCount());
+        values.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        return values;
+    }
+
+    private <T> Mono<T> find(AsyncCache<String, Optional<Document>> cache, Class<T> type, String id) {
+        if (!properties.isEnabled())
+            return mongoTemplate.findById(id, type);
+
+        return load(cache, type, id)
+                .flatMap(document -> Mono.justOrEmpty(document.map(found ->
+                        mongoTemplate.getConverter().read(type, found))));
+    }
+
+    private Mono<Boolean> exists(AsyncCache<String, Optional<Document>> cache, Class<?> type, String id) {
+        if (!properties.isEnabled())
+            return mongoTemplate.findById(id, type).hasElement();
+
+        return load(cache, type, id).map(Optional::isPresent);
+    }
+
+    private Mono<Optional<Document>> load(AsyncCache<String, Optional<Document>> cache, Class<?> type, String id) {
+        return Mono.defer(() -> Mono.fromFuture(cache.get(id, (key, executor) -> mongoTemplate.findById(key, type)
+                .map(entity -> {
+                    Document document = new Document();
+                    mongoTemplate.getConverter().write(entity, document);
+                    return Optional.of(document);
+                })
+                .defaultIfEmpty(Optional.empty())
+                .toFuture())));
+    }
+}
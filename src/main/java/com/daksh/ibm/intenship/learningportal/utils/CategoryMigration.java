@@ -0,0 +1,70 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Category;
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Replaces the course lists kept in category documents by earlier versions
+ * with course counts. The listed courses are added to the category first, as
+ * courses are now the only record of the categories they belong to. Runs on
+ * startup, before requests are served.
+ */
+@Component
+@Slf4j
+public class CategoryMigration {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public CategoryMigration(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        String categories = mongoTemplate.getCollectionName(Category.class);
+
+        Long migrated = mongoTemplate.find(query(where("courseList").exists(true)), Document.class, categories)
+                .concatMap(category -> migrate(categories, category))
+                .count()
+                .block();
+
+        if (migrated != null && migrated > 0)
+            log.info("[I53] migrated the course lists of {} categories", migrated);
+    }
+
+    /**
+     * Adds the category to its listed courses, then counts its courses and
+     * removes the list. Adding is idempotent, so a migration interrupted
+     * between the steps is simply repeated.
+     * @param categories name of the category collection
+     * @param category raw category document
+     * @return Mono signalling completion
+     */
+    private Mono<Void> migrate(String categories, Document category) {
+        Object id = category.get("_id");
+        List<?> courseList = category.get("courseList", List.class);
+
+        Mono<Void> addCategory = courseList == null || courseList.isEmpty() ? Mono.empty()
+                : mongoTemplate.updateMulti(query(where("_id").in(courseList)),
+                        new Update().addToSet("categories", id.toString()), Course.class)
+                        .then();
+
+        return addCategory
+                .then(mongoTemplate.count(query(where("categories").is(id.toString())), Course.class))
+                .flatMap(courseCount -> mongoTemplate.updateFirst(query(where("_id").is(id)),
+                        new Update().set("courseCount", courseCount).unset("courseList"), categories))
+                .then();
+    }
+}
@@ -0,0 +1,287 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.properties.ContentCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Size bounded cache of S3 objects on the local disk. Objects are written to the
+ * cache while a full download streams them to the client, and cache hits are served
+ * as memory-mapped regions of the cached file, without copying them onto the heap.
+ *
+ * Objects are never modified once uploaded, so entries are removed by eviction, or
+ * when the object is released by its last content entry. Each entry has a file of
+ * its own, so replacing an entry never removes the file of the new one. Entries of
+ * released objects cached by other instances are left to eviction, as no lecture
+ * refers to them anymore.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(ContentCacheProperties.class)
+public class ContentCache {
+
+    // buffers received ahead of the disk, before the download waits for it
+    private static final int WRITE_PREFETCH = 4;
+
+    private final ContentCacheProperties properties;
+    private final Path directory;
+    private final Cache<String, CachedObject> cache;
+
+    // keys currently being written, so concurrent misses fill the cache only once
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    public ContentCache(ContentCacheProperties properties) throws IOException {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toKilobytes())
+                .<String, CachedObject>weigher((fileKey, object) ->
+                        (int) Math.min(Integer.MAX_VALUE, object.getMetadata().getSize() / 1024 + 1))
+                .removalListener((fileKey, object, cause) -> {
+                    if (object != null)
+                        delete(object.getPath());
+                })
+                .build();
+
+        if (properties.isEnabled()) {
+            // entries are only kept in memory, so files left by a previous run are unknown
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(ContentCache::delete);
+            }
+            log.info("[I64] content cache: directory={}, maxSize={}", directory, properties.getMaxSize());
+        }
+    }
+
+    /**
+     * Returns the cached object, if the object is in the cache
+     * @param fileKey
+     * @return
+     */
+    public Optional<CachedObject> get(String fileKey) {
+        if (!properties.isEnabled())
+            return Optional.empty();
+        return Optional.ofNullable(cache.getIfPresent(fileKey));
+    }
+
+    /**
+     * Removes the object from the cache and deletes its file
+     * @param fileKey
+     */
+    public void invalidate(String fileKey) {
+        cache.invalidate(fileKey);
+    }
+
+    /**
+     * Maps a range of the cached file into memory. The regions stay readable
+     * even if the entry is evicted while they are being sent.
+     * @param object
+     * @param start first byte of the range
+     * @param count number of bytes
+     * @return the mapped regions, or an empty Optional if the file is gone
+     */
+    public Optional<List<ByteBuffer>> map(CachedObject object, long start, long count) {
+        long chunkSize = properties.getMapChunkSize().toBytes();
+        List<ByteBuffer> regions = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(object.getPath(), StandardOpenOption.READ)) {
+            for (long position = start; position < start + count; position += chunkSize)
+                regions.add(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(chunkSize, start + count - position)));
+        } catch (IOException e) {
+            log.warn("[W98] content cache: cannot map {}: {}", object.getPath(), e.getMessage());
+            cache.invalidate(object.getMetadata().getFileKey());
+            return Optional.empty();
+        }
+
+        return Optional.of(regions);
+    }
+
+    /**
+     * Writes the object to the cache while it is streamed. Each buffer is passed on
+     * once it is on disk, so the download is not read faster than the disk writes.
+     * The entry is added once the whole object has been received; a cancelled or
+     * failed stream leaves nothing behind.
+     * @param metadata metadata of the whole object
+     * @param content full object content
+     * @return the content, unchanged
+     */
+    public Flux<ByteBuffer> fill(ContentMetadata metadata, Flux<ByteBuffer> content) {
+        String fileKey = metadata.getFileKey();
+        if (!properties.isEnabled() || metadata.getSize() > properties.getMaxEntrySize().toBytes()
+                || cache.getIfPresent(fileKey) != null)
+            return content;
+
+        return Flux.defer(() -> {
+            if (!filling.add(fileKey))
+                return content;
+
+            Path path = directory.resolve(fileKey + "." + UUID.randomUUID());
+            CacheFile file;
+            try {
+                file = new CacheFile(path.resolveSibling(path.getFileName() + ".tmp"));
+            } catch (IOException e) {
+                filling.remove(fileKey);
+                log.warn("[W131] content cache: cannot create file for {}: {}", fileKey, e.getMessage());
+                return content;
+            }
+
+            return content
+                    .concatMap(buffer -> Mono.fromFuture(file.write(buffer)).thenReturn(buffer), WRITE_PREFETCH)
+                    .doFinally(signal -> file.finish(signal == SignalType.ON_COMPLETE)
+                            .whenComplete((written, error) -> {
+                                filling.remove(fileKey);
+                                if (error == null && written == metadata.getSize())
+                                    add(metadata, file.path, path);
+                                else
+                                    delete(file.path);
+                            }));
+        });
+    }
+
+    private void add(ContentMetadata metadata, Path temporaryPath, Path path) {
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[W151] content cache: cannot add {}: {}", metadata.getFileKey(), e.getMessage());
+            delete(temporaryPath);
+            return;
+        }
+
+        log.info("[I156] content cache: added fileKey={}, size={}", metadata.getFileKey(), metadata.getSize());
+        cache.put(metadata.getFileKey(), new CachedObject(path, metadata));
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("[W166] content cache: cannot delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    public static class CachedObject {
+        private final Path path;
+        private final ContentMetadata metadata;
+
+        public CachedObject(Path path, ContentMetadata metadata) {
+            this.path = path;
+            this.metadata = metadata;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public ContentMetadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    /**
+     * File being filled. Buffers are written one at a time on an asynchronous
+     * channel, so the download stream is never blocked by disk I/O.
+     */
+    private static class CacheFile {
+        private final Path path;
+        private final AsynchronousFileChannel channel;
+        private long position = 0;
+        private volatile boolean failed = false;
+        private volatile CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+
+        CacheFile(Path path) throws IOException {
+            this.path = path;
+            this.channel = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Writes the buffer after the previous one, which must be written already.
+         * A failed write is not signalled, as the download goes on without the cache
+         * @param buffer
+         * @return future completed once the buffer is written, or has failed
+         */
+        CompletableFuture<Void> write(ByteBuffer buffer) {
+            if (failed)
+                return pending;
+            ByteBuffer data = buffer.duplicate();
+            long at = position;
+            position += data.remaining();
+            pending = writeFully(data, at).exceptionally(error -> {
+                failed = true;
+                return null;
+            });
+            return pending;
+        }
+
+        /**
+         * Waits for the last write and closes the file
+         * @param completed true if the whole stream was received
+         * @return future of the number of bytes written, or -1 if the stream did not complete
+         */
+        CompletableFuture<Long> finish(boolean completed) {
+            return pending.handle((ignored, error) -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    return -1L;
+                }
+                return !failed && completed ? position : -1L;
+            });
+        }
+
+        private CompletableFuture<Void> writeFully(ByteBuffer data, long at) {
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            try {
+                channel.write(data, at, null, new CompletionHandler<Integer, Void>() {
+                    @Override
+                    public void completed(Integer count, Void attachment) {
+                        if (!data.hasRemaining()) {
+                            written.complete(null);
+                            return;
+                        }
+                        writeFully(data, at + count).whenComplete((ignored, error) -> {
+                            if (error != null)
+                                written.completeExceptionally(error);
+                            else
+                                written.complete(null);
+                        });
+                    }
+
+                    @Override
+                    public void failed(Throwable error, Void attachment) {
+                        written.completeExceptionally(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                written.completeExceptionally(e);
+            }
+            return written;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.ContentObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Hash to object index used to store identical lecture content only once.
+ * Every lecture content entry holds one reference to its object; the object
+ * may be deleted from S3 once the last reference is released.
+ */
+@Component
+@Slf4j
+public class ContentIndex {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ContentIndex(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Adds a reference to the object with the given content hash, indexing
+     * fileKey as that object if the content was not seen before.
+     * @param hash SHA-256 of the content, hex encoded
+     * @param metadata metadata of the object just uploaded with this content
+     * @return Mono of the indexed object. If its fileKey differs from the one passed
+     * in, the content already existed and the new object is a duplicate.
+     */
+    public Mono<ContentObject> register(String hash, ContentMetadata metadata) {
+        return mongoTemplate.findAndModify(query(where("_id").is(hash)),
+                new Update()
+                        .inc("refCount", 1)
+                        .setOnInsert("fileKey", metadata.getFileKey())
+                        .setOnInsert("size", metadata.getSize())
+                        .setOnInsert("eTag", metadata.getETag())
+                        .setOnInsert("createdDate", metadata.getLastModified()),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                ContentObject.class)
+                // two first uploads of the same content raced on the insert
+                .retryWhen(Retry.max(1).filter(error -> error instanceof DuplicateKeyException));
+    }
+
+    /**
+     * Adds a reference to the object, for a content entry written with a lecture
+     * rather than uploaded into it.
+     * @param fileKey
+     * @return Mono of true if the object is indexed and now holds the reference,
+     * false if it is not indexed, or its last reference was released meanwhile.
+     */
+    public Mono<Boolean> acquire(String fileKey) {
+        return mongoTemplate.findAndModify(query(where("fileKey").is(fileKey)),
+                new Update().inc("refCount", 1),
+                ContentObject.class)
+                .map(object -> true)
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Releases one reference to the object.
+     * @param fileKey
+     * @return Mono of true if the object is no longer referenced and may be deleted.
+     * Objects that are not indexed are never shared, so they may always be deleted.
+     */
+    public Mono<Boolean> release(String fileKey) {
+        return mongoTemplate.findAndModify(query(where("fileKey").is(fileKey)),
+                new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                ContentObject.class)
+                .flatMap(object -> {
+                    if (object.getRefCount() > 0)
+                        return Mono.just(false);
+
+                    // only remove the entry if no upload registered it in the meantime
+                    return mongoTemplate.remove(query(where("_id").is(object.getHash())
+                            .and("refCount").lte(0)), ContentObject.class)
+                            .map(result -> result.getDeletedCount() > 0);
+                })
+                .defaultIfEmpty(true)
+                .doOnNext(unreferenced -> log.info("[I89] release: fileKey={}, unreferenced={}",
+                        fileKey, unreferenced));
+    }
+}
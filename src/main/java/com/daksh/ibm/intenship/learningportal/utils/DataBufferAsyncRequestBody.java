@@ -0,0 +1,58 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import org.reactivestreams.Subscriber;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request body made of the original {@link DataBuffer}s received from the client.
+ * The buffers are sent as they are, without being copied into a single part buffer.
+ *
+ * The body owns the buffers until {@link #release()} is called. Each subscription reads
+ * them through new {@link ByteBuffer} views, so the SDK can subscribe again when it
+ * retries a request.
+ */
+public class DataBufferAsyncRequestBody implements AsyncRequestBody {
+
+    private final List<DataBuffer> buffers;
+    private final long contentLength;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public DataBufferAsyncRequestBody(List<DataBuffer> buffers) {
+        this.buffers = buffers;
+        this.contentLength = Utility.readableByteCount(buffers);
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of(contentLength);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (released.get()) {
+            Flux.<ByteBuffer>error(new IllegalStateException("request body already released"))
+                    .subscribe(subscriber);
+            return;
+        }
+
+        Flux.fromIterable(buffers)
+                .map(DataBuffer::asByteBuffer)
+                .subscribe(subscriber);
+    }
+
+    /**
+     * Releases the underlying buffers. Calling this more than once has no effect.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true))
+            buffers.forEach(DataBufferUtils::release);
+    }
+}
@@ -0,0 +1,255 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.PendingDeletion;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Deletes S3 objects that are no longer referenced, in the background. Delete
+ * paths release the references of the content they drop and queue the objects
+ * left unreferenced in Mongo, so the request does not wait for S3 and no object
+ * is forgotten when S3 fails or the instance stops. The queue is drained in
+ * batches of at most 1000 keys, one DeleteObjects each.
+ *
+ * Instances share the queue. A batch taken by one instance is leased to it,
+ * and deleting an object twice does no harm, so an expired lease only costs
+ * a repeated request.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(S3ClientConfigurationProperties.class)
+public class DeletionQueue {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final S3AsyncClient s3AsyncClient;
+    private final ContentIndex contentIndex;
+    private final ContentCache contentCache;
+    private final S3ClientConfigurationProperties s3props;
+
+    private Disposable worker;
+
+    public DeletionQueue(ReactiveMongoTemplate mongoTemplate, S3AsyncClient s3AsyncClient, ContentIndex contentIndex,
+                         ContentCache contentCache, S3ClientConfigurationProperties s3props) {
+        this.mongoTemplate = mongoTemplate;
+        this.s3AsyncClient = s3AsyncClient;
+        this.contentIndex = contentIndex;
+        this.contentCache = contentCache;
+        this.s3props = s3props;
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = Flux.interval(s3props.getDeletionInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> drain()
+                        .onErrorResume(error -> {
+                            log.error("[E57] draining the deletion queue failed", error);
+                            return Mono.just(0L);
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.dispose();
+    }
+
+    /**
+     * Releases one reference to each object, and queues the objects left
+     * unreferenced for deletion, removing them from the content cache
+     * @param fileKeys keys of the content entries dropped, one per entry
+     * @return Mono signalling completion, once the objects are queued
+     */
+    public Mono<Void> release(Flux<String> fileKeys) {
+        return fileKeys
+                .flatMap(fileKey -> contentIndex.release(fileKey)
+                        .filter(unreferenced -> unreferenced)
+                        .map(unreferenced -> fileKey), s3props.getDeletionConcurrency())
+                .doOnNext(contentCache::invalidate)
+                .buffer(s3props.getDeletionBatchSize())
+                .concatMap(unreferenced -> enqueue(s3props.getBucket(), unreferenced))
+                .then();
+    }
+
+    /**
+     * Queues objects for deletion. Objects already queued are left as they are
+     * @param bucket
+     * @param fileKeys
+     * @return Mono signalling completion
+     */
+    public Mono<Void> enqueue(String bucket, List<String> fileKeys) {
+        if (fileKeys.isEmpty())
+            return Mono.empty();
+
+        Date now = new Date();
+        List<WriteModel<Document>> upserts = new ArrayList<>();
+        for (String fileKey : fileKeys)
+            upserts.add(new UpdateOneModel<>(Filters.eq("_id", fileKey), Updates.combine(
+                    Updates.setOnInsert("bucket", bucket),
+                    Updates.setOnInsert("attempts", 0),
+                    Updates.setOnInsert("dueDate", now),
+                    Updates.setOnInsert("createdDate", now)),
+                    new UpdateOptions().upsert(true)));
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(PendingDeletion.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(upserts, new BulkWriteOptions().ordered(false))))
+                .doOnNext(result -> log.info("[I104] queued {} objects for deletion", fileKeys.size()))
+                .then();
+    }
+
+    /**
+     * Deletes the queued objects that are due, until none is left
+     * @return Mono of the number of objects deleted
+     */
+    public Mono<Long> drain() {
+        return Flux.defer(this::take)
+                .repeat()
+                .takeWhile(batch -> !batch.isEmpty())
+                .flatMap(this::delete, s3props.getDeletionConcurrency())
+                .reduce(0L, Long::sum)
+                .doOnNext(count -> {
+                    if (count > 0)
+                        log.info("[I111] deleted {} queued objects", count);
+                });
+    }
+
+    // Takes the next batch of due objects, leasing it to this instance. Another
+    // instance may lease some of the objects found first, so only the objects
+    // that carry the lease of this take are returned
+    private Mono<List<PendingDeletion>> take() {
+        Date now = new Date();
+        String leaseId = UUID.randomUUID().toString();
+        Query due = query(where("dueDate").lte(now))
+                .with(Sort.by("dueDate"))
+                .limit(s3props.getDeletionBatchSize());
+        due.fields().include("_id");
+
+        return mongoTemplate.find(due, PendingDeletion.class)
+                .collectList()
+                .flatMap(batch -> batch.isEmpty() ? Mono.just(batch) : mongoTemplate.updateMulti(
+                        query(where("_id").in(fileKeys(batch)).and("dueDate").lte(now)),
+                        new Update()
+                                .set("dueDate", new Date(now.getTime() + s3props.getDeletionLease().toMillis()))
+                                .set("leaseId", leaseId),
+                        PendingDeletion.class)
+                        .flatMap(result -> result.getModifiedCount() == 0
+                                // all taken by other instances, look for more
+                                ? take()
+                                : mongoTemplate.find(query(where("leaseId").is(leaseId)), PendingDeletion.class)
+                                        .collectList()));
+    }
+
+    private Mono<Long> delete(List<PendingDeletion> batch) {
+        Map<String, List<PendingDeletion>> buckets = batch.stream()
+                .collect(Collectors.groupingBy(PendingDeletion::getBucket));
+
+        return Flux.fromIterable(buckets.entrySet())
+                .concatMap(bucket -> delete(bucket.getKey(), bucket.getValue()))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> delete(String bucket, List<PendingDeletion> objects) {
+        List<ObjectIdentifier> identifiers = objects.stream()
+                .map(object -> ObjectIdentifier.builder().key(object.getFileKey()).build())
+                .collect(Collectors.toList());
+
+        // Quiet mode answers with the failed keys only
+        return Mono.defer(() -> Mono.fromFuture(s3AsyncClient.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder().objects(identifiers).quiet(true).build())
+                .build())))
+                .flatMap(response -> {
+                    UploadUtility.checkResult(response);
+                    Map<String, String> errors = response.errors().stream()
+                            .collect(Collectors.toMap(S3Error::key, S3Error::message, (first, second) -> first));
+                    List<String> deleted = new ArrayList<>();
+                    List<PendingDeletion> failed = new ArrayList<>();
+                    for (PendingDeletion object : objects) {
+                        if (errors.containsKey(object.getFileKey())) {
+                            object.setLastError(errors.get(object.getFileKey()));
+                            failed.add(object);
+                        } else {
+                            deleted.add(object.getFileKey());
+                        }
+                    }
+                    deleted.forEach(contentCache::invalidate);
+                    return mongoTemplate.remove(query(where("_id").in(deleted).and("leaseId").is(leaseId(objects))),
+                            PendingDeletion.class)
+                            .then(retry(failed))
+                            .thenReturn((long) deleted.size());
+                })
+                .onErrorResume(error -> {
+                    objects.forEach(object -> object.setLastError(String.valueOf(error.getMessage())));
+                    return retry(objects).thenReturn(0L);
+                });
+    }
+
+    // Puts failed objects back in the queue, after a delay that doubles with every attempt
+    private Mono<Void> retry(List<PendingDeletion> failed) {
+        if (failed.isEmpty())
+            return Mono.empty();
+
+        log.warn("[W113] {} objects not deleted, first: fileKey={}, error={}", failed.size(),
+                failed.get(0).getFileKey(), failed.get(0).getLastError());
+
+        long now = System.currentTimeMillis();
+        return Flux.fromIterable(failed)
+                // an object whose lease expired belongs to the instance that took it since
+                .flatMap(object -> mongoTemplate.updateFirst(query(where("_id").is(object.getFileKey())
+                                .and("leaseId").is(object.getLeaseId())),
+                        new Update()
+                                .inc("attempts", 1)
+                                .set("lastError", object.getLastError())
+                                .set("dueDate", new Date(now + retryDelay(object.getAttempts()).toMillis())),
+                        PendingDeletion.class))
+                .then();
+    }
+
+    private Duration retryDelay(int attempts) {
+        Duration max = s3props.getDeletionMaxRetryDelay();
+        Duration delay = s3props.getDeletionRetryDelay().multipliedBy(1L << Math.min(attempts, 20));
+        return delay.compareTo(max) > 0 ? max : delay;
+    }
+
+    private static String leaseId(List<PendingDeletion> objects) {
+        return objects.get(0).getLeaseId();
+    }
+
+    private static List<String> fileKeys(List<PendingDeletion> objects) {
+        return objects.stream().map(PendingDeletion::getFileKey).collect(Collectors.toList());
+    }
+}
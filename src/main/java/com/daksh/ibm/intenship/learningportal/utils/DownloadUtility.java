@@ -1,24 +1,76 @@
 package com.daksh.ibm.intenship.learningportal.utils;
 
 
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 import software.amazon.awssdk.core.SdkResponse;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
+/**
+ * Download
+ */
+@Component
 @Slf4j
+@EnableConfigurationProperties(S3ClientConfigurationProperties.class)
 public class DownloadUtility {
 
+    private final S3AsyncClient s3AsyncClient;
+
+    private final S3ClientConfigurationProperties s3props;
+
+    private final ContentCache contentCache;
+
+    // full downloads in flight, keyed by fileKey
+    private final ConcurrentMap<String, SharedDownload> downloads = new ConcurrentHashMap<>();
+
+    public DownloadUtility(S3AsyncClient s3AsyncClient, S3ClientConfigurationProperties s3props,
+                           ContentCache contentCache) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3props = s3props;
+        this.contentCache = contentCache;
+    }
+
     /**
      * Holds the API response and stream
      */
@@ -86,4 +138,489 @@ public class DownloadUtility {
         }
     }
 
+    /**
+     * Streams the object, or the byte ranges requested with the Range header.
+     * Ranges are honored as described in RFC 7233: a single range is answered with 206,
+     * several ranges are answered with a multipart/byteranges body, and an If-Range
+     * validator that does not match the object makes the whole object be sent.
+     *
+     * Objects in the local content cache are served from memory-mapped regions of the
+     * cached file. Full downloads of other objects fill the cache as they stream, and
+     * concurrent full downloads of the same object share one S3 request.
+     *
+     * If the metadata stored with the lecture content is passed in, its validators are
+     * sent and checked against If-Range, so they never change with the tier serving
+     * the content.
+     * @param fileKey
+     * @param requestHeaders
+     * @param stored stored metadata of the content, or null if none was captured
+     * @return Mono of ResponseEntity containing the content
+     */
+    public Mono<ResponseEntity<Flux<ByteBuffer>>> download(String fileKey, HttpHeaders requestHeaders,
+                                                           ContentMetadata stored) {
+        return download(fileKey, requestHeaders, parseRanges(requestHeaders), stored)
+                .map(response -> withValidators(response, stored));
+    }
+
+    private Mono<ResponseEntity<Flux<ByteBuffer>>> download(String fileKey, HttpHeaders requestHeaders,
+                                                            List<HttpRange> ranges, ContentMetadata stored) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+
+        Optional<ResponseEntity<Flux<ByteBuffer>>> cached = contentCache.get(fileKey)
+                .flatMap(object -> getCached(object, ranges, ifRange, stored));
+        if (cached.isPresent())
+            return Mono.just(cached.get());
+
+        if (ranges.isEmpty())
+            return getContent(fileKey);
+
+        if (ifRange == null && ranges.size() == 1)
+            return getRange(fileKey, ranges.get(0));
+
+        Mono<ContentMetadata> current = stored != null
+                ? Mono.just(stored)
+                : headObject(fileKey).map(head -> metadata(fileKey, head));
+
+        return current
+                .flatMap(metadata -> {
+                    if (ifRange != null && !ifRangeMatches(ifRange, metadata))
+                        return getContent(fileKey);
+
+                    if (ranges.size() == 1)
+                        return getRange(fileKey, ranges.get(0));
+
+                    return Mono.just(rangesResponse(metadata, ranges,
+                            (start, end) -> getObject(fileKey, "bytes=" + start + "-" + end)
+                                    .flatMapMany(response -> response.flux)));
+                });
+    }
+
+    /**
+     * Evaluates If-None-Match, or If-Modified-Since when If-None-Match is absent,
+     * as described in RFC 7232
+     * @param requestHeaders
+     * @param metadata current metadata of the content
+     * @return true if the client copy is current and a 304 should be sent
+     */
+    public static boolean notModified(HttpHeaders requestHeaders, ContentMetadata metadata) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            // If-None-Match uses the weak comparison
+            String eTag = metadata.getETag() == null ? null : metadata.getETag().replaceFirst("^W/", "");
+            return ifNoneMatch.stream()
+                    .anyMatch(tag -> tag.equals("*") || tag.replaceFirst("^W/", "").equals(eTag));
+        }
+
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince >= 0 && metadata.getLastModified() != null
+                && metadata.getLastModified().getTime() / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    public static <T> ResponseEntity<T> notModifiedResponse(ContentMetadata metadata) {
+        return validators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), metadata).build();
+    }
+
+    /**
+     * Returns the headers a GET of the whole content would be answered with
+     * @param metadata
+     * @return
+     */
+    public static <T> ResponseEntity<T> headResponse(ContentMetadata metadata) {
+        return validators(ResponseEntity.ok(), metadata)
+                .header(HttpHeaders.CONTENT_TYPE, metadata.getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(metadata.getSize()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + metadata.getFilename() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .build();
+    }
+
+    public Mono<FluxResponse> getObject(String fileKey, String range) {
+        return getObject(fileKey, range, null);
+    }
+
+    private Mono<FluxResponse> getObject(String fileKey, String range, String ifMatch) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(s3props.getBucket())
+                .key(fileKey)
+                .range(range)
+                .ifMatch(ifMatch)
+                .build();
+
+        return Mono.defer(() -> Mono.fromFuture(s3AsyncClient.getObject(request, new FluxResponseProvider())))
+                .doOnNext(response -> checkResult(response.sdkResponse));
+    }
+
+    public Mono<HeadObjectResponse> headObject(String fileKey) {
+        return Mono.defer(() -> Mono.fromFuture(s3AsyncClient.headObject(HeadObjectRequest.builder()
+                .bucket(s3props.getBucket())
+                .key(fileKey)
+                .build())))
+                .doOnNext(DownloadUtility::checkResult);
+    }
+
+    public static ContentMetadata metadata(String fileKey, HeadObjectResponse response) {
+        return new ContentMetadata(fileKey, response.contentLength(), response.contentType(),
+                response.metadata().getOrDefault("filename", fileKey), response.eTag(),
+                response.lastModified() == null ? null : Date.from(response.lastModified()));
+    }
+
+    public static ContentMetadata metadata(String fileKey, GetObjectResponse response) {
+        return new ContentMetadata(fileKey, response.contentLength(), response.contentType(),
+                response.metadata().getOrDefault("filename", fileKey), response.eTag(),
+                response.lastModified() == null ? null : Date.from(response.lastModified()));
+    }
+
+    /**
+     * Answers the request from the content cache
+     * @return the response, or an empty Optional if the cached file could not be read
+     */
+    private Optional<ResponseEntity<Flux<ByteBuffer>>> getCached(ContentCache.CachedObject object,
+                                                                 List<HttpRange> ranges, String ifRange,
+                                                                 ContentMetadata stored) {
+        ContentMetadata metadata = object.getMetadata();
+        log.info("[I139] cache hit: fileKey={}, ranges={}", metadata.getFileKey(), ranges);
+
+        if (ranges.isEmpty() || (ifRange != null && !ifRangeMatches(ifRange, stored != null ? stored : metadata)))
+            return contentCache.map(object, 0, metadata.getSize())
+                    .map(regions -> contentResponse(metadata, Flux.fromIterable(regions)));
+
+        // map every range before answering, so a file evicted in between is not half sent
+        List<List<ByteBuffer>> mappedRanges = new ArrayList<>();
+        for (HttpRange range : ranges) {
+            long[] bounds = bounds(range, metadata.getSize());
+            if (bounds == null)
+                return Optional.of(notSatisfiable(metadata));
+
+            Optional<List<ByteBuffer>> regions = contentCache.map(object, bounds[0], bounds[1] - bounds[0] + 1);
+            if (!regions.isPresent())
+                return Optional.empty();
+            mappedRanges.add(regions.get());
+        }
+
+        if (ranges.size() == 1)
+            return Optional.of(rangeResponse(metadata, ranges.get(0), Flux.fromIterable(mappedRanges.get(0))));
+
+        Iterator<List<ByteBuffer>> rangeContent = mappedRanges.iterator();
+        return Optional.of(rangesResponse(metadata, ranges,
+                (start, end) -> Flux.fromIterable(rangeContent.next())));
+    }
+
+    private Mono<ResponseEntity<Flux<ByteBuffer>>> getContent(String fileKey) {
+        return Mono.defer(() -> downloads.computeIfAbsent(fileKey, SharedDownload::new).response)
+                .map(shared -> {
+                    log.info("[I95] filename={}, length={}", shared.metadata.getFilename(), shared.metadata.getSize());
+
+                    return contentResponse(shared.metadata, joinContent(fileKey, shared));
+                });
+    }
+
+    /**
+     * Streams the shared content from its first buffer. A request that joins after
+     * the first buffer was sent makes its own request instead.
+     */
+    private Flux<ByteBuffer> joinContent(String fileKey, SharedContent shared) {
+        return shared.content
+                .switchOnFirst((first, content) -> {
+                    boolean missedStart = first.hasValue()
+                            ? first.get().getT1() != 0
+                            : first.isOnComplete() && shared.metadata.getSize() > 0;
+                    if (!missedStart)
+                        return content.map(buffer -> buffer.getT2().duplicate());
+
+                    log.info("[I292] fileKey={} joined a shared download too late", fileKey);
+                    return content.take(0)
+                            .thenMany(fetchContent(fileKey, shared.metadata.getETag())
+                                    .flatMapMany(Tuple2::getT2));
+                });
+    }
+
+    /**
+     * Full download of an object that concurrent requests share. The object is
+     * fetched with a single GetObject and its buffers are numbered, so requests
+     * joining late can tell they missed the start. The download is removed once
+     * its stream ends, so later requests start a new one.
+     */
+    private class SharedDownload {
+
+        private final Mono<SharedContent> response;
+
+        SharedDownload(String fileKey) {
+            AtomicBoolean subscribed = new AtomicBoolean();
+
+            response = fetchContent(fileKey, null)
+                    .doOnError(e -> downloads.remove(fileKey, this))
+                    .map(object -> {
+                        ContentMetadata metadata = object.getT1();
+
+                        // The response body can only be read once. If the stream was
+                        // already read, later subscribers get nothing and fall back
+                        Flux<Tuple2<Long, ByteBuffer>> content = share(Flux
+                                .defer(() -> subscribed.compareAndSet(false, true)
+                                        ? contentCache.fill(metadata, object.getT2())
+                                        : Flux.<ByteBuffer>empty())
+                                .doFinally(signal -> downloads.remove(fileKey, this)),
+                                s3props.getDownloadSharedPrefetch());
+
+                        return new SharedContent(metadata, content);
+                    })
+                    .cache();
+        }
+    }
+
+    /**
+     * Numbers the buffers of a download and shares them between its subscribers.
+     * The download is read at the pace of the slowest subscriber, at most prefetch
+     * buffers ahead of it, so a slow request holds no more buffers than that
+     * however far behind it is. Subscribers joining late only get the buffers
+     * read from then on
+     * @param content
+     * @param prefetch
+     * @return Flux of the buffers and their index, connected to content by the
+     * first subscriber and cancelled once all have left
+     */
+    static Flux<Tuple2<Long, ByteBuffer>> share(Flux<ByteBuffer> content, int prefetch) {
+        return content
+                .index()
+                .publish(prefetch)
+                .refCount();
+    }
+
+    /**
+     * Fetches the whole object. Objects of at least aws.s3.parallel_download_threshold
+     * bytes are fetched as ranges over several connections at once and reassembled in
+     * order; each range only reads ahead aws.s3.parallel_download_prefetch buffers.
+     * The first range is requested without knowing the object size, so the first bytes
+     * arrive as early as with a single GetObject.
+     * @param fileKey
+     * @param ifMatch ETag the object must have, or null
+     * @return Mono of the object metadata and content
+     */
+    private Mono<Tuple2<ContentMetadata, Flux<ByteBuffer>>> fetchContent(String fileKey, String ifMatch) {
+        long partSize = s3props.getParallelDownloadPartSize();
+        if (s3props.getParallelDownloadThreshold() <= 0)
+            return getObject(fileKey, null, ifMatch)
+                    .map(response -> Tuples.of(metadata(fileKey, response.sdkResponse), response.flux));
+
+        return getObject(fileKey, "bytes=0-" + (partSize - 1), ifMatch)
+                .map(first -> {
+                    long size = Long.parseLong(first.sdkResponse.contentRange().substring(
+                            first.sdkResponse.contentRange().lastIndexOf('/') + 1));
+                    ContentMetadata metadata = metadata(fileKey, first.sdkResponse);
+                    metadata.setSize(size);
+
+                    if (size <= partSize)
+                        return Tuples.of(metadata, first.flux);
+
+                    // smaller objects get the rest in a single range
+                    long restPartSize = size < s3props.getParallelDownloadThreshold() ? size : partSize;
+                    List<String> ranges = new ArrayList<>();
+                    for (long start = partSize; start < size; start += restPartSize)
+                        ranges.add("bytes=" + start + "-" + (Math.min(start + restPartSize, size) - 1));
+                    log.info("[I318] fileKey={}, size={}, parts={}", fileKey, size, ranges.size() + 1);
+
+                    Flux<Flux<ByteBuffer>> parts = Flux.concat(
+                            Mono.just(first.flux),
+                            Flux.fromIterable(ranges).map(range -> getObject(fileKey, range, metadata.getETag())
+                                    .flatMapMany(response -> response.flux)));
+
+                    return Tuples.of(metadata, parts.flatMapSequential(part -> part,
+                            s3props.getParallelDownloadConcurrency(), s3props.getParallelDownloadPrefetch()));
+                })
+                // empty objects have no range to ask for
+                .onErrorResume(DownloadUtility::isRangeNotSatisfiable, error -> getObject(fileKey, null, ifMatch)
+                        .map(response -> Tuples.of(metadata(fileKey, response.sdkResponse), response.flux)));
+    }
+
+    @AllArgsConstructor
+    private static class SharedContent {
+        private final ContentMetadata metadata;
+        private final Flux<Tuple2<Long, ByteBuffer>> content;
+    }
+
+    /**
+     * Fetches a single range from S3 without asking for the object size first
+     */
+    private Mono<ResponseEntity<Flux<ByteBuffer>>> getRange(String fileKey, HttpRange range) {
+        return getObject(fileKey, "bytes=" + range)
+                .map(response -> {
+                    String filename = response.sdkResponse.metadata().getOrDefault("filename", fileKey);
+                    log.info("[I178] filename={}, range={}", filename, response.sdkResponse.contentRange());
+
+                    return validators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT),
+                            metadata(fileKey, response.sdkResponse))
+                            .header(HttpHeaders.CONTENT_TYPE, response.sdkResponse.contentType())
+                            .header(HttpHeaders.CONTENT_LENGTH, Long.toString(response.sdkResponse.contentLength()))
+                            .header(HttpHeaders.CONTENT_RANGE, response.sdkResponse.contentRange())
+                            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                            .body(response.flux);
+                })
+                .onErrorResume(DownloadUtility::isRangeNotSatisfiable,
+                        error -> Mono.just(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                                .body(Flux.<ByteBuffer>empty())));
+    }
+
+    private static ResponseEntity<Flux<ByteBuffer>> contentResponse(ContentMetadata metadata, Flux<ByteBuffer> body) {
+        return validators(ResponseEntity.ok(), metadata)
+                .header(HttpHeaders.CONTENT_TYPE, metadata.getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(metadata.getSize()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + metadata.getFilename() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(body);
+    }
+
+    private static ResponseEntity<Flux<ByteBuffer>> rangeResponse(ContentMetadata metadata, HttpRange range,
+                                                                  Flux<ByteBuffer> body) {
+        long start = range.getRangeStart(metadata.getSize());
+        long end = range.getRangeEnd(metadata.getSize());
+
+        return validators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), metadata)
+                .header(HttpHeaders.CONTENT_TYPE, metadata.getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(end - start + 1))
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + metadata.getSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + metadata.getFilename() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(body);
+    }
+
+    /**
+     * Sends several ranges as a multipart/byteranges body. The content of each
+     * range is only requested from rangeReader when the body gets to it.
+     */
+    static ResponseEntity<Flux<ByteBuffer>> rangesResponse(ContentMetadata metadata, List<HttpRange> ranges,
+                                                           BiFunction<Long, Long, Flux<ByteBuffer>> rangeReader) {
+        long length = metadata.getSize();
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        String closing = "\r\n--" + boundary + "--\r\n";
+
+        List<String> partHeaders = new ArrayList<>();
+        List<long[]> bounds = new ArrayList<>();
+        long contentLength = closing.length();
+
+        for (HttpRange httpRange : ranges) {
+            long[] range = bounds(httpRange, length);
+            if (range == null)
+                return notSatisfiable(metadata);
+            long start = range[0];
+            long end = range[1];
+
+            String partHeader = "\r\n--" + boundary + "\r\n" +
+                    HttpHeaders.CONTENT_TYPE + ": " + metadata.getContentType() + "\r\n" +
+                    HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + length + "\r\n\r\n";
+            partHeaders.add(partHeader);
+            bounds.add(range);
+            contentLength += partHeader.length() + end - start + 1;
+        }
+
+        log.info("[I231] fileKey={}, ranges={}", metadata.getFileKey(), ranges);
+
+        Flux<ByteBuffer> body = Flux.range(0, ranges.size())
+                .concatMap(i -> Flux.concat(
+                        Mono.fromCallable(() -> ascii(partHeaders.get(i))),
+                        rangeReader.apply(bounds.get(i)[0], bounds.get(i)[1])))
+                .concatWith(Mono.fromCallable(() -> ascii(closing)));
+
+        return validators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), metadata)
+                .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(contentLength))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + metadata.getFilename() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(body);
+    }
+
+    private static ResponseEntity.BodyBuilder validators(ResponseEntity.BodyBuilder builder, ContentMetadata metadata) {
+        if (metadata.getETag() != null)
+            builder.eTag(metadata.getETag());
+        if (metadata.getLastModified() != null)
+            builder.lastModified(metadata.getLastModified().getTime());
+        return builder;
+    }
+
+    /**
+     * Replaces the validators of a successful response with the stored ones
+     */
+    private static ResponseEntity<Flux<ByteBuffer>> withValidators(ResponseEntity<Flux<ByteBuffer>> response,
+                                                                  ContentMetadata stored) {
+        if (stored == null || !response.getStatusCode().is2xxSuccessful())
+            return response;
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.remove(HttpHeaders.ETAG);
+        headers.remove(HttpHeaders.LAST_MODIFIED);
+        if (stored.getETag() != null)
+            headers.setETag(stored.getETag());
+        if (stored.getLastModified() != null)
+            headers.setLastModified(stored.getLastModified().getTime());
+
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    private static ResponseEntity<Flux<ByteBuffer>> notSatisfiable(ContentMetadata metadata) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + metadata.getSize())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(Flux.empty());
+    }
+
+    /**
+     * Returns the requested ranges. A malformed Range header is ignored,
+     * and the whole object is sent.
+     */
+    static List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            log.info("[I291] ignoring invalid Range header: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns the first and last byte of the range. HttpRange does not check
+     * that a range starts within the content
+     * @param range
+     * @param length content length
+     * @return the bounds, or null if the range is not satisfiable
+     */
+    static long[] bounds(HttpRange range, long length) {
+        try {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            return start < length && start <= end ? new long[] {start, end} : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates an If-Range validator, which is either an entity tag or a date
+     * @param ifRange
+     * @param metadata current metadata of the object
+     * @return true if the ranges should be sent
+     */
+    static boolean ifRangeMatches(String ifRange, ContentMetadata metadata) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            // If-Range requires a strong comparison
+            return !ifRange.startsWith("W/") && ifRange.equals(metadata.getETag());
+
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return metadata.getLastModified() != null
+                    && date.equals(metadata.getLastModified().toInstant().truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isRangeNotSatisfiable(Throwable error) {
+        return error instanceof S3Exception
+                && ((S3Exception) error).statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value();
+    }
+
+    private static ByteBuffer ascii(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
 }
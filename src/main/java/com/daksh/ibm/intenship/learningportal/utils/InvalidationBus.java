@@ -0,0 +1,204 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.properties.CatalogCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Carries cache evictions between instances. Evictions are written, in
+ * batches, to a capped collection, and every instance follows it with a
+ * tailable cursor. Capped collections and tailable cursors work on a
+ * standalone mongod, unlike change streams.
+ *
+ * Events are not stored beyond the capped size, so an instance that loses
+ * its cursor cannot tell which it missed, and is told to evict everything
+ * before it tails again.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(CatalogCacheProperties.class)
+public class InvalidationBus {
+
+    // Tells the events of this instance apart, which it has applied already
+    private final String node = UUID.randomUUID().toString();
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final CatalogCacheProperties properties;
+    private final UnicastProcessor<Invalidation> published;
+    private final FluxSink<Invalidation> publishedSink;
+
+    private Disposable publisher;
+
+    public InvalidationBus(ReactiveMongoTemplate mongoTemplate, CatalogCacheProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+        this.published = UnicastProcessor.create(Queues.<Invalidation>unboundedMultiproducer().get());
+        this.publishedSink = published.sink();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled())
+            return;
+
+        createCollection().block();
+
+        publisher = published
+                .bufferTimeout(properties.getInvalidationBatchSize(), properties.getInvalidationBatchWindow())
+                .concatMap(batch -> mongoTemplate.insert(toDocument(Invalidation.merge(batch)),
+                        properties.getInvalidationCollection())
+                        .onErrorResume(error -> {
+                            // The other instances evict the documents when their entries expire
+                            log.error("[E63] failed to publish {} cache invalidations", batch.size(), error);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publisher != null)
+            publisher.dispose();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && properties.isInvalidationEnabled();
+    }
+
+    /**
+     * Publishes evictions to the other instances
+     * @param invalidation
+     */
+    public void publish(Invalidation invalidation) {
+        if (isEnabled())
+            publishedSink.next(invalidation);
+    }
+
+    /**
+     * Follows the evictions published by the other instances. When the cursor
+     * is lost, Invalidation.ALL is emitted before the collection is tailed again,
+     * from its start
+     * @return endless Flux of Invalidation
+     */
+    public Flux<Invalidation> invalidations() {
+        if (!isEnabled())
+            return Flux.never();
+
+        String collection = properties.getInvalidationCollection();
+        return Flux.defer(() -> mongoTemplate.tail(new Query(), Document.class, collection))
+                .filter(event -> !node.equals(event.getString("node")))
+                .map(InvalidationBus::toInvalidation)
+                .onErrorResume(error -> {
+                    log.warn("[W69] lost the cursor of {}", collection, error);
+                    return Flux.empty();
+                })
+                .concatWith(Mono.just(Invalidation.ALL))
+                .concatWith(Mono.delay(properties.getInvalidationRetryDelay()).then(Mono.empty()))
+                .repeat();
+    }
+
+    // A tailable cursor on an empty collection is closed at once, so the
+    // collection is created holding one event
+    private Mono<Void> createCollection() {
+        String collection = properties.getInvalidationCollection();
+        CollectionOptions options = CollectionOptions.empty()
+                .capped()
+                .size(properties.getInvalidationCollectionSize().toBytes())
+                .maxDocuments(properties.getInvalidationMaxEvents());
+
+        return mongoTemplate.collectionExists(collection)
+                .flatMap(exists -> exists ? Mono.empty() : mongoTemplate.createCollection(collection, options)
+                        .then(mongoTemplate.insert(toDocument(new Invalidation(Collections.emptySet(),
+                                Collections.emptySet(), false)), collection))
+                        .then()
+                        // Another instance may have created it first
+                        .onErrorResume(error -> mongoTemplate.collectionExists(collection)
+                                .flatMap(created -> created ? Mono.empty() : Mono.error(error))))
+                .then();
+    }
+
+    private Document toDocument(Invalidation invalidation) {
+        return new Document("node", node)
+                .append("courses", invalidation.getCourses())
+                .append("categories", invalidation.getCategories())
+                .append("all", invalidation.isAll())
+                .append("createdDate", new Date());
+    }
+
+    private static Invalidation toInvalidation(Document event) {
+        List<String> courses = event.getList("courses", String.class, Collections.emptyList());
+        List<String> categories = event.getList("categories", String.class, Collections.emptyList());
+        return new Invalidation(new HashSet<>(courses), new HashSet<>(categories),
+                Boolean.TRUE.equals(event.getBoolean("all")));
+    }
+
+    /**
+     * Course and category ids to evict, or all of them
+     */
+    public static class Invalidation {
+        public static final Invalidation ALL = new Invalidation(Collections.emptySet(), Collections.emptySet(), true);
+
+        private final Set<String> courses;
+        private final Set<String> categories;
+        private final boolean all;
+
+        public Invalidation(Set<String> courses, Set<String> categories, boolean all) {
+            this.courses = courses;
+            this.categories = categories;
+            this.all = all;
+        }
+
+        public static Invalidation courses(Collection<String> ids) {
+            return new Invalidation(new HashSet<>(ids), Collections.emptySet(), false);
+        }
+
+        public static Invalidation categories(Collection<String> ids) {
+            return new Invalidation(Collections.emptySet(), new HashSet<>(ids), false);
+        }
+
+        static Invalidation merge(List<Invalidation> batch) {
+            Set<String> courses = new HashSet<>();
+            Set<String> categories = new HashSet<>();
+            for (Invalidation invalidation : batch) {
+                if (invalidation.all)
+                    return ALL;
+                courses.addAll(invalidation.courses);
+                categories.addAll(invalidation.categories);
+            }
+            return new Invalidation(courses, categories, false);
+        }
+
+        public Set<String> getCourses() {
+            return courses;
+        }
+
+        public Set<String> getCategories() {
+            return categories;
+        }
+
+        public boolean isAll() {
+            return all;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Sort keys a collection can be listed by. A listing is ordered by one key
+ * and then by _id, and each page is queried from the last key returned, so
+ * reading a page never scans the documents before it
+ * @param <T> type of the listed documents
+ */
+public class Keyset<T> {
+    private static final String ID = "_id";
+
+    // BSON types of the ids. Ids given by clients are stored as strings and
+    // generated ones as ObjectIds, which sort after all strings
+    private static final int STRING = 2;
+    private static final int OBJECT_ID = 7;
+
+    private static final String NULL = "~";
+
+    private final Map<String, SortKey<T>> keys = new LinkedHashMap<>();
+
+    public Keyset(Function<T, String> id) {
+        keys.put("id", new SortKey<>(ID, String.class, id, id));
+    }
+
+    /**
+     * Adds a key the documents can be sorted by
+     * @param name name of the key in the sort parameter, and of the field
+     * @param type String, Date or a Number
+     * @param value reads the key of a document
+     * @return this keyset
+     */
+    public Keyset<T> key(String name, Class<?> type, Function<T, ?> value) {
+        keys.put(name, new SortKey<>(name, type, value, keys.get("id").id));
+        return this;
+    }
+
+    /**
+     * Resolves a sort parameter, the key name optionally prefixed by '-' to sort
+     * in descending order, and the cursor a page starts after
+     * @param sort
+     * @param cursor cursor returned with the previous page, or null for the first page
+     * @return the order of the listing
+     * @throws IllegalArgumentException if the key is unknown or the cursor is malformed
+     */
+    public Order<T> order(String sort, String cursor) {
+        boolean descending = sort.startsWith("-");
+        SortKey<T> key = keys.get(descending ? sort.substring(1) : sort);
+        if (key == null)
+            throw new IllegalArgumentException("Unknown sort key: " + sort);
+        return new Order<>(key, descending, cursor);
+    }
+
+    private static class SortKey<T> {
+        private final String field;
+        private final Class<?> type;
+        private final Function<T, ?> value;
+        private final Function<T, String> id;
+
+        SortKey(String field, Class<?> type, Function<T, ?> value, Function<T, String> id) {
+            this.field = field;
+            this.type = type;
+            this.value = value;
+            this.id = id;
+        }
+
+        static String encode(Object value) {
+            if (value == null)
+                return NULL;
+            String text = value instanceof Date ? Long.toString(((Date) value).getTime()) : value.toString();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static String decodeText(String encoded) {
+            return new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        }
+
+        Object decode(String encoded) {
+            if (NULL.equals(encoded))
+                return null;
+            String text = decodeText(encoded);
+            if (type == Date.class)
+                return new Date(Long.parseLong(text));
+            if (Number.class.isAssignableFrom(type))
+                return Double.valueOf(text);
+            return text;
+        }
+    }
+
+    /**
+     * A listing ordered by one of the keys, starting after a cursor
+     * @param <T> type of the listed documents
+     */
+    public static class Order<T> {
+        private final SortKey<T> key;
+        private final boolean descending;
+        private final Criteria after;
+
+        private Order(SortKey<T> key, boolean descending, String cursor) {
+            this.key = key;
+            this.descending = descending;
+            this.after = cursor == null ? new Criteria() : after(cursor);
+        }
+
+        /**
+         * Returns the query for the documents after the cursor
+         * @param filter criteria of the listed documents, or null to list all of them
+         * @param limit maximum number of documents, 0 for all of them
+         * @param fields fields to read, or null for whole documents. The sort key is
+         * always read, to make the cursor from
+         * @return Query sorted by the key and then by _id
+         */
+        public Query query(Criteria filter, int limit, String... fields) {
+            Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+            Sort sort = key.field.equals(ID) ? Sort.by(direction, ID) : Sort.by(direction, key.field, ID);
+            Criteria criteria = filter == null ? after : new Criteria().andOperator(filter, after);
+            Query query = new Query(criteria).with(sort).limit(limit);
+            if (fields != null) {
+                for (String field : fields)
+                    query.fields().include(field);
+                query.fields().include(key.field);
+            }
+            return query;
+        }
+
+        /**
+         * Returns the cursor the next page starts after
+         * @param last last document of the page
+         * @return opaque cursor
+         */
+        public String cursor(T last) {
+            String id = SortKey.encode(key.id.apply(last));
+            return key.field.equals(ID) ? id : SortKey.encode(key.value.apply(last)) + "." + id;
+        }
+
+        private Criteria after(String cursor) {
+            try {
+                String[] parts = cursor.split("\\.", -1);
+                if (parts.length != (key.field.equals(ID) ? 1 : 2))
+                    throw new IllegalArgumentException("Malformed cursor: " + cursor);
+                String id = SortKey.decodeText(parts[parts.length - 1]);
+                if (key.field.equals(ID))
+                    return idAfter(id);
+
+                Object value = key.decode(parts[0]);
+                Criteria sameValue = new Criteria().andOperator(where(key.field).is(value), idAfter(id));
+                // Null and missing keys sort before every value, so they come first in
+                // ascending order and last in descending order
+                if (value == null)
+                    return descending ? sameValue : new Criteria().orOperator(sameValue, where(key.field).ne(null));
+                Criteria beyond = descending ? where(key.field).lt(value) : where(key.field).gt(value);
+                return descending
+                        ? new Criteria().orOperator(beyond, sameValue, where(key.field).is(null))
+                        : new Criteria().orOperator(beyond, sameValue);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+            }
+        }
+
+        // Comparisons only match ids of the same BSON type, so the ids of the other
+        // type that sort after the cursor are added
+        private Criteria idAfter(String id) {
+            boolean objectId = ObjectId.isValid(id);
+            Criteria beyond = descending ? where(ID).lt(id) : where(ID).gt(id);
+            if (descending && objectId)
+                return new Criteria().orOperator(beyond, where(ID).type(STRING));
+            if (!descending && !objectId)
+                return new Criteria().orOperator(beyond, where(ID).type(OBJECT_ID));
+            return beyond;
+        }
+    }
+}
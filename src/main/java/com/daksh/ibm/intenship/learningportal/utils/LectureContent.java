@@ -0,0 +1,178 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.repository.LectureRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the content references of lectures written by clients. Every content
+ * entry holds one reference to its object, so an entry new to a course takes a
+ * reference before it is written, and is rejected unless its object is in the
+ * ContentIndex; entries a course no longer holds are released once its new
+ * lectures are written.
+ */
+@Component
+@Slf4j
+public class LectureContent {
+
+    // References taken at the same time
+    private static final int ACQUIRE_CONCURRENCY = 16;
+
+    private final LectureRepository lectureRepository;
+    private final ContentIndex contentIndex;
+    private final DeletionQueue deletionQueue;
+
+    public LectureContent(LectureRepository lectureRepository, ContentIndex contentIndex,
+                          DeletionQueue deletionQueue) {
+        this.lectureRepository = lectureRepository;
+        this.contentIndex = contentIndex;
+        this.deletionQueue = deletionQueue;
+    }
+
+    /**
+     * Saves a course with the lectures it holds, replacing the lectures it had.
+     * References are taken for the content entries the course did not hold
+     * before the course is saved, and given back if it cannot be saved
+     * @param course course holding the new lectures, with the id it is saved under if it has one
+     * @param saveCourse saves the course
+     * @return Mono of the saved course, or UnknownContentException if a new
+     * entry is not indexed, leaving the course as it was
+     */
+    public Mono<Course> save(Course course, Mono<Course> saveCourse) {
+        Mono<List<String>> held = course.getId() == null ? Mono.just(Collections.emptyList())
+                : fileKeys(lectureRepository.findByCourseId(course.getId())).collectList();
+        return held
+                .map(fileKeys -> added(fileKeys(course.getLectures()), fileKeys))
+                .flatMap(added -> acquire(added)
+                        .then(saveCourse.onErrorResume(error -> giveBack(added).then(Mono.error(error)))))
+                .flatMap(savedCourse -> deletionQueue
+                        .release(dropped(lectureRepository.replaceLectures(savedCourse.getId(),
+                                course.getLectures()), course.getLectures()))
+                        .thenReturn(savedCourse));
+    }
+
+    /**
+     * Takes one reference for each content entry, only if all of their objects
+     * are indexed
+     * @param fileKeys keys of the content entries, one per entry
+     * @return Mono signalling completion, or UnknownContentException naming the
+     * objects that are not indexed, once the references taken are given back
+     */
+    public Mono<Void> acquire(List<String> fileKeys) {
+        if (fileKeys.isEmpty())
+            return Mono.empty();
+
+        List<String> acquired = Collections.synchronizedList(new ArrayList<>());
+        List<String> unknown = Collections.synchronizedList(new ArrayList<>());
+        return Flux.fromIterable(fileKeys)
+                .flatMap(fileKey -> contentIndex.acquire(fileKey)
+                        .doOnNext(indexed -> (indexed ? acquired : unknown).add(fileKey)), ACQUIRE_CONCURRENCY)
+                .then(Mono.defer(() -> {
+                    if (unknown.isEmpty())
+                        return Mono.empty();
+
+                    log.info("[I171] acquire: {} of {} content entries not indexed", unknown.size(), fileKeys.size());
+                    return giveBack(acquired).then(Mono.error(new UnknownContentException(unknown)));
+                }));
+    }
+
+    /**
+     * Gives back references taken for content entries that were not written
+     * @param fileKeys keys of the content entries, one per entry
+     * @return Mono signalling completion, once the unreferenced objects are queued
+     */
+    public Mono<Void> giveBack(List<String> fileKeys) {
+        return deletionQueue.release(Flux.fromIterable(fileKeys));
+    }
+
+    /**
+     * Lists the content entries of the lectures
+     * @param lectures lectures keyed by lecture id, may be null
+     * @return fileKeys of the lectures, one per content entry
+     */
+    public static List<String> fileKeys(Map<String, Lecture> lectures) {
+        List<String> fileKeys = new ArrayList<>();
+        if (lectures != null)
+            lectures.values().forEach(lecture -> fileKeys.addAll(fileKeys(lecture)));
+        return fileKeys;
+    }
+
+    /**
+     * Lists the content entries of the lecture
+     * @param lecture
+     * @return fileKeys of the lecture, one per content entry
+     */
+    public static List<String> fileKeys(Lecture lecture) {
+        return lecture.getContentUrls() == null ? Collections.emptyList()
+                : new ArrayList<>(lecture.getContentUrls().keySet());
+    }
+
+    private static Flux<String> fileKeys(Flux<Lecture> lectures) {
+        return lectures.flatMapIterable(LectureContent::fileKeys);
+    }
+
+    /**
+     * Leaves out the content entries already held, which keep their references
+     * @param written fileKeys of the written lectures
+     * @param held fileKeys of the lectures they replace
+     * @return fileKeys that need a reference
+     */
+    static List<String> added(Collection<String> written, Collection<String> held) {
+        Map<String, Integer> counts = new HashMap<>();
+        held.forEach(fileKey -> counts.merge(fileKey, 1, Integer::sum));
+        List<String> added = new ArrayList<>();
+        for (String fileKey : written)
+            if (counts.merge(fileKey, -1, Integer::sum) < 0)
+                added.add(fileKey);
+        return added;
+    }
+
+    /**
+     * Leaves out the content entries the new lectures still hold, which keep
+     * their references
+     * @param removed fileKeys the replaced and removed lectures held
+     * @param lectures the new lectures
+     * @return Flux of the fileKeys to release
+     */
+    private static Flux<String> dropped(Flux<String> removed, Map<String, Lecture> lectures) {
+        return Flux.defer(() -> {
+            Map<String, Integer> kept = new HashMap<>();
+            fileKeys(lectures).forEach(fileKey -> kept.merge(fileKey, 1, Integer::sum));
+            return removed.filter(fileKey -> kept.merge(fileKey, -1, Integer::sum) < 0);
+        });
+    }
+
+    /**
+     * A content entry written by a client names an object the ContentIndex does
+     * not hold, so it could be deleted while the lecture points at it
+     */
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class UnknownContentException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> fileKeys;
+
+        public UnknownContentException(List<String> fileKeys) {
+            super("Content not uploaded: " + fileKeys);
+            this.fileKeys = new ArrayList<>(fileKeys);
+        }
+
+        public List<String> getFileKeys() {
+            return fileKeys;
+        }
+    }
+}
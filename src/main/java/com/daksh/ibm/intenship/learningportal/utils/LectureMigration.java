@@ -0,0 +1,83 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves lectures embedded in course documents by earlier versions into the
+ * lectures collection. Runs on startup, before requests are served; courses
+ * are left without the embedded lectures once they have been copied, so
+ * nothing is migrated twice.
+ */
+@Component
+@Slf4j
+public class LectureMigration {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public LectureMigration(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        String courses = mongoTemplate.getCollectionName(Course.class);
+
+        Long migrated = mongoTemplate.find(query(where("lectures").exists(true)), Document.class, courses)
+                .concatMap(course -> migrate(courses, course))
+                .reduce(0L, Long::sum)
+                .block();
+
+        if (migrated != null && migrated > 0)
+            log.info("[I47] migrated {} embedded lectures", migrated);
+    }
+
+    /**
+     * Copies the embedded lectures of the course, then removes them from it.
+     * Lectures are saved by their key, so a migration interrupted between the
+     * two steps is simply repeated.
+     * @param courses name of the course collection
+     * @param course raw course document
+     * @return Mono of the number of lectures copied
+     */
+    private Mono<Long> migrate(String courses, Document course) {
+        Object id = course.get("_id");
+        Document lectures = course.get("lectures", Document.class);
+
+        // lecture ids are taken from the course counter from now on, so
+        // it must not hand out the ids of the migrated lectures again
+        int nextLectureId = lectures == null ? 0 : lectures.keySet().stream()
+                .filter(lectureId -> lectureId.matches("\\d{1,9}"))
+                .mapToInt(lectureId -> Integer.parseInt(lectureId) + 1)
+                .max()
+                .orElse(0);
+
+        return Flux.fromIterable(lectures == null ? new Document().entrySet() : lectures.entrySet())
+                .filter(entry -> entry.getValue() instanceof Document)
+                .map(entry -> toLecture(id.toString(), entry))
+                .concatMap(mongoTemplate::save)
+                .count()
+                .flatMap(count -> mongoTemplate.updateFirst(query(where("_id").is(id)),
+                        new Update().unset("lectures").max("count", nextLectureId), courses)
+                        .thenReturn(count));
+    }
+
+    private Lecture toLecture(String courseId, Map.Entry<String, Object> entry) {
+        Lecture lecture = mongoTemplate.getConverter().read(Lecture.class, (Document) entry.getValue());
+        lecture.assign(courseId, entry.getKey());
+        return lecture;
+    }
+}
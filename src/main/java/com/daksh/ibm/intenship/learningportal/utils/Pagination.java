@@ -0,0 +1,144 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.properties.PaginationProperties;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Component
+@EnableConfigurationProperties(PaginationProperties.class)
+public class Pagination {
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final PaginationProperties properties;
+
+    public Pagination(ReactiveMongoTemplate mongoTemplate, PaginationProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * Lists a collection in the order of a sort key. A JSON array holds one page,
+     * and the Link header points to the next one while there may be more. When
+     * application/x-ndjson is accepted, the documents are streamed one per line
+     * as they are read, up to the limit if one is given
+     * @param request
+     * @param keyset sort keys of the collection
+     * @param type type of the documents
+     * @param filter criteria of the listed documents, or null to list all of them
+     * @param sort sort key, prefixed by '-' for descending order
+     * @param after cursor of the previous page
+     * @param limit page size
+     * @param fields fields to read, or null for whole documents
+     * @param expand turns the documents read into the ones returned
+     * @return Mono of ResponseEntity containing the documents, or a Bad Request
+     */
+    public <T> Mono<ResponseEntity<Flux<?>>> list(ServerHttpRequest request, Keyset<T> keyset, Class<T> type,
+                                                  Criteria filter, String sort, String after, Integer limit, String[] fields,
+                                                  Function<Flux<T>, Flux<?>> expand) {
+        Keyset.Order<T> order;
+        try {
+            order = keyset.order(sort, after);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        if (limit != null && limit < 1)
+            return Mono.just(ResponseEntity.badRequest().build());
+
+        if (streaming(request.getHeaders())) {
+            Query query = order.query(filter, limit == null ? 0 : limit, fields);
+            Flux<?> documents = expand.apply(mongoTemplate.find(query, type));
+            return Mono.just(ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(documents));
+        }
+
+        int pageSize = pageSize(limit);
+        // One more document than the page is read to tell whether there is a next page
+        return mongoTemplate.find(order.query(filter, pageSize + 1, fields), type)
+                .collectList()
+                .map(documents -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+                    if (documents.size() > pageSize) {
+                        documents = documents.subList(0, pageSize);
+                        response.header(HttpHeaders.LINK, next(request, order.cursor(documents.get(pageSize - 1)),
+                                pageSize));
+                    }
+                    return response.<Flux<?>>body(expand.apply(Flux.fromIterable(documents)));
+                });
+    }
+
+    /**
+     * Explains the query list runs for the same request, to check which index
+     * it uses. The query is run, for its execution statistics
+     * @param request
+     * @param keyset sort keys of the collection
+     * @param type type of the documents
+     * @param filter criteria of the listed documents, or null to list all of them
+     * @param sort sort key, prefixed by '-' for descending order
+     * @param after cursor of the previous page
+     * @param limit page size
+     * @param fields fields to read, or null for whole documents
+     * @return Mono of ResponseEntity containing the output of the explain command, or a Bad Request
+     */
+    public <T> Mono<ResponseEntity<Document>> explain(ServerHttpRequest request, Keyset<T> keyset, Class<T> type,
+                                                      Criteria filter, String sort, String after, Integer limit,
+                                                      String[] fields) {
+        Keyset.Order<T> order;
+        try {
+            order = keyset.order(sort, after);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        if (limit != null && limit < 1)
+            return Mono.just(ResponseEntity.badRequest().build());
+
+        int queryLimit = streaming(request.getHeaders()) ? (limit == null ? 0 : limit) : pageSize(limit) + 1;
+        Query query = order.query(filter, queryLimit, fields);
+
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type);
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+        Document find = new Document("find", mongoTemplate.getCollectionName(type))
+                .append("filter", mapper.getMappedObject(query.getQueryObject(), entity))
+                .append("sort", mapper.getMappedSort(query.getSortObject(), entity))
+                .append("projection", mapper.getMappedFields(query.getFieldsObject(), entity));
+        if (queryLimit > 0)
+            find.append("limit", queryLimit);
+
+        return mongoTemplate.executeCommand(new Document("explain", find).append("verbosity", "executionStats"))
+                .map(ResponseEntity::ok);
+    }
+
+    private int pageSize(Integer limit) {
+        return Math.min(limit == null ? properties.getPageSize() : limit, properties.getMaxPageSize());
+    }
+
+    private static boolean streaming(HttpHeaders headers) {
+        List<MediaType> accept = headers.getAccept();
+        return accept.stream().anyMatch(APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
+    private static String next(ServerHttpRequest request, String cursor, int limit) {
+        String uri = UriComponentsBuilder.fromHttpRequest(request)
+                .replaceQueryParam("after", cursor)
+                .replaceQueryParam("limit", limit)
+                .build(true)
+                .toUriString();
+        return "<" + uri + ">; rel=\"next\"";
+    }
+}
@@ -0,0 +1,109 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Presigned S3 URLs for downloading lecture content directly from the bucket
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(S3ClientConfigurationProperties.class)
+public class PresignUtility {
+
+    private final S3Presigner s3Presigner;
+
+    private final S3ClientConfigurationProperties s3props;
+
+    private final DownloadUtility downloadUtility;
+
+    private final List<MediaType> proxyContentTypes;
+
+    // presigned URL of each fileKey, content type and filename, or an empty
+    // Optional if it is proxied. Deduplicated content is named by each lecture
+    private final Cache<List<String>, Optional<URI>> redirects;
+
+    public PresignUtility(S3Presigner s3Presigner, S3ClientConfigurationProperties s3props,
+                          DownloadUtility downloadUtility) {
+        this.s3Presigner = s3Presigner;
+        this.s3props = s3props;
+        this.downloadUtility = downloadUtility;
+        this.proxyContentTypes = s3props.getPresignProxyContentTypes().stream()
+                .map(MediaType::parseMediaType)
+                .collect(Collectors.toList());
+        this.redirects = Caffeine.newBuilder()
+                .expireAfterWrite(s3props.getPresignDuration().minus(s3props.getPresignRenewBefore()))
+                .maximumSize(100_000)
+                .build();
+    }
+
+    /**
+     * Returns where the content should be downloaded from. The object is looked
+     * up in S3 only for content uploaded before its metadata was stored.
+     * @param fileKey
+     * @param metadata stored metadata of the content, or null if there is none
+     * @return Mono of the presigned URL, or an empty Mono if the content is streamed by the service
+     */
+    public Mono<URI> redirect(String fileKey, ContentMetadata metadata) {
+        if (!s3props.isPresignDownloads())
+            return Mono.empty();
+
+        if (metadata == null)
+            return downloadUtility.headObject(fileKey)
+                    .flatMap(head -> redirect(fileKey, DownloadUtility.metadata(fileKey, head)));
+
+        List<String> key = Arrays.asList(fileKey, metadata.getContentType(), metadata.getFilename());
+        Optional<URI> cached = redirects.getIfPresent(key);
+        if (cached != null)
+            return Mono.justOrEmpty(cached);
+
+        Optional<URI> redirect = presign(fileKey, metadata);
+        redirects.put(key, redirect);
+        return Mono.justOrEmpty(redirect);
+    }
+
+    private Optional<URI> presign(String fileKey, ContentMetadata metadata) {
+        MediaType contentType = metadata.getContentType() == null
+                ? MediaType.APPLICATION_OCTET_STREAM : MediaType.parseMediaType(metadata.getContentType());
+        if (proxyContentTypes.stream().anyMatch(type -> type.includes(contentType)))
+            return Optional.empty();
+
+        String filename = metadata.getFilename() == null ? fileKey : metadata.getFilename();
+        GetObjectPresignRequest request = GetObjectPresignRequest.builder()
+                .signatureDuration(s3props.getPresignDuration())
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(s3props.getBucket())
+                        .key(fileKey)
+                        .responseContentDisposition("attachment; filename=\"" + filename + "\"")
+                        .build())
+                .build();
+
+        PresignedGetObjectRequest presigned = s3Presigner.presignGetObject(request);
+        log.info("[I87] presigned fileKey={}, expiration={}", fileKey, presigned.expiration());
+
+        try {
+            return Optional.of(presigned.url().toURI());
+        } catch (URISyntaxException e) {
+            log.warn("[W92] cannot redirect to presigned URL of {}: {}", fileKey, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
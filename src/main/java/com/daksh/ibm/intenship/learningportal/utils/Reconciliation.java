@@ -0,0 +1,283 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentObject;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.model.PendingDeletion;
+import com.daksh.ibm.intenship.learningportal.model.ReconciliationReport;
+import com.daksh.ibm.intenship.learningportal.properties.ReconciliationProperties;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Reconciles the bucket with the content referenced by the lectures. Uploads
+ * write S3 before Mongo, so a failure in between leaves objects nothing refers
+ * to, and content entries may refer to objects that are gone.
+ *
+ * The objects listed by ListObjectsV2 and the keys read from Mongo are merged
+ * as sorted streams, so neither side is held in memory. S3 lists keys in the
+ * order of their UTF-8 bytes, which Mongo sorts strings by as well, and which
+ * the merge compares code points by.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties({ReconciliationProperties.class, S3ClientConfigurationProperties.class})
+public class Reconciliation {
+
+    private static final Comparator<String> UTF8_ORDER = Reconciliation::compareCodePoints;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final S3AsyncClient s3AsyncClient;
+    private final DeletionQueue deletionQueue;
+    private final ReconciliationProperties properties;
+    private final S3ClientConfigurationProperties s3props;
+
+    private final AtomicReference<ReconciliationReport> report = new AtomicReference<>();
+    private volatile Disposable job;
+
+    public Reconciliation(ReactiveMongoTemplate mongoTemplate, S3AsyncClient s3AsyncClient,
+                          DeletionQueue deletionQueue, ReconciliationProperties properties,
+                          S3ClientConfigurationProperties s3props) {
+        this.mongoTemplate = mongoTemplate;
+        this.s3AsyncClient = s3AsyncClient;
+        this.deletionQueue = deletionQueue;
+        this.properties = properties;
+        this.s3props = s3props;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (job != null)
+            job.dispose();
+    }
+
+    /**
+     * Returns the report of the running reconciliation, or of the last one
+     * @return the report, or null if no reconciliation ran
+     */
+    public ReconciliationReport report() {
+        return report.get();
+    }
+
+    /**
+     * Starts a reconciliation in the background, unless one is running
+     * @param prefix only objects and references with keys starting with it, or null for all
+     * @param cleanup queue the orphaned objects for deletion
+     * @return the report of the reconciliation started, or null if one is running
+     */
+    public ReconciliationReport start(String prefix, boolean cleanup) {
+        ReconciliationReport running = report.get();
+        if (running != null && running.getStatus() == ReconciliationReport.Status.RUNNING)
+            return null;
+
+        ReconciliationReport started = new ReconciliationReport(s3props.getBucket(), prefix, cleanup);
+        if (!report.compareAndSet(running, started))
+            return null;
+
+        log.info("[I143] reconciliation started: bucket={}, prefix={}, cleanup={}",
+                started.getBucket(), prefix, cleanup);
+        job = reconcile(started)
+                .subscribe(done -> {
+                }, error -> {
+                    log.error("[E59] reconciliation failed after key {}", started.getLastKey(), error);
+                    started.fail(error);
+                }, () -> {
+                    started.complete();
+                    log.info("[I144] reconciliation completed: {}", started);
+                });
+        return started;
+    }
+
+    private Mono<Void> reconcile(ReconciliationReport report) {
+        String prefix = report.getPrefix();
+        Date recentAfter = new Date(report.getStartedDate().getTime() - properties.getGracePeriod().toMillis());
+
+        Flux<Key> keys = Flux.mergeOrdered(properties.getPrefetch(), Comparator.comparing(Key::getKey, UTF8_ORDER),
+                objects(report.getBucket(), prefix),
+                references(prefix),
+                indexed(prefix),
+                queued(report.getBucket(), prefix));
+
+        Flux<String> orphans = keys
+                .bufferUntilChanged(Key::getKey)
+                .concatMapIterable(sameKey -> reconcile(report, sameKey, recentAfter));
+
+        if (!report.isCleanup())
+            return orphans.then();
+
+        return orphans
+                .buffer(s3props.getDeletionBatchSize())
+                .concatMap(batch -> deletionQueue.enqueue(report.getBucket(), batch)
+                        .doOnSuccess(done -> report.enqueued(batch.size())))
+                .then();
+    }
+
+    /**
+     * Reconciles one key
+     * @param report
+     * @param sameKey the entries of the key, at most one from each source
+     * @param recentAfter objects modified after this are in their grace period
+     * @return the key if its object may be deleted
+     */
+    List<String> reconcile(ReconciliationReport report, List<Key> sameKey, Date recentAfter) {
+        Key object = null;
+        boolean referenced = false, indexed = false, queued = false;
+        for (Key key : sameKey) {
+            switch (key.source) {
+                case OBJECT:
+                    object = key;
+                    break;
+                case REFERENCE:
+                    referenced = true;
+                    break;
+                case INDEXED:
+                    indexed = true;
+                    break;
+                case QUEUED:
+                    queued = true;
+                    break;
+            }
+        }
+
+        String key = sameKey.get(0).getKey();
+        if (object != null)
+            report.object(key, object.size);
+        if (referenced)
+            report.reference(key);
+
+        if (referenced && object == null)
+            report.dangling(key, properties.getSampleSize());
+        if (referenced || object == null)
+            return Collections.emptyList();
+
+        if (queued) {
+            report.queued();
+        } else if (object.lastModified.after(recentAfter)) {
+            report.recent();
+        } else {
+            report.orphan(key, object.size, indexed, properties.getSampleSize());
+            if (!indexed)
+                return Collections.singletonList(key);
+        }
+        return Collections.emptyList();
+    }
+
+    // Objects of the bucket, listed a page at a time as the merge asks for them
+    private Flux<Key> objects(String bucket, String prefix) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .maxKeys(properties.getPageSize())
+                .build();
+
+        return Flux.from(s3AsyncClient.listObjectsV2Paginator(request))
+                .flatMapIterable(ListObjectsV2Response::contents)
+                .map(object -> new Key(object.key(), Source.OBJECT, object.size(),
+                        Date.from(object.lastModified())));
+    }
+
+    // Distinct fileKeys of the lecture content. The sort may spill to disk
+    private Flux<Key> references(String prefix) {
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$project", new Document("_id", 0)
+                .append("content", new Document("$objectToArray", "$contentUrls"))));
+        pipeline.add(new Document("$unwind", "$content"));
+        if (prefix != null)
+            pipeline.add(new Document("$match", new Document("content.k", startsWith(prefix))));
+        pipeline.add(new Document("$group", new Document("_id", "$content.k")));
+        pipeline.add(new Document("$sort", new Document("_id", 1)));
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Lecture.class))
+                .flatMapMany(collection -> collection.aggregate(pipeline)
+                        .allowDiskUse(true)
+                        .batchSize(properties.getPageSize()))
+                .map(reference -> new Key(reference.getString("_id"), Source.REFERENCE, 0, null));
+    }
+
+    // Objects of the content index, read in the order of its unique fileKey index
+    private Flux<Key> indexed(String prefix) {
+        Query query = new Query(prefix == null ? new Criteria() : where("fileKey").regex(startsWith(prefix)))
+                .with(Sort.by("fileKey"))
+                .cursorBatchSize(properties.getPageSize());
+        query.fields().include("fileKey");
+
+        return mongoTemplate.find(query, ContentObject.class)
+                .map(object -> new Key(object.getFileKey(), Source.INDEXED, 0, null));
+    }
+
+    private Flux<Key> queued(String bucket, String prefix) {
+        Criteria criteria = where("bucket").is(bucket);
+        if (prefix != null)
+            criteria.and("_id").regex(startsWith(prefix));
+        Query query = new Query(criteria)
+                .with(Sort.by("_id"))
+                .cursorBatchSize(properties.getPageSize());
+        query.fields().include("_id");
+
+        return mongoTemplate.find(query, PendingDeletion.class)
+                .map(deletion -> new Key(deletion.getFileKey(), Source.QUEUED, 0, null));
+    }
+
+    private static Pattern startsWith(String prefix) {
+        return Pattern.compile("^" + Pattern.quote(prefix));
+    }
+
+    // Code point order, the same as the order of the UTF-8 bytes
+    static int compareCodePoints(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y)
+                return Integer.compare(x, y);
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    enum Source {
+        OBJECT, REFERENCE, INDEXED, QUEUED
+    }
+
+    static class Key {
+        private final String key;
+        private final Source source;
+        private final long size;
+        private final Date lastModified;
+
+        Key(String key, Source source, long size, Date lastModified) {
+            this.key = key;
+            this.source = source;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        String getKey() {
+            return key;
+        }
+    }
+}
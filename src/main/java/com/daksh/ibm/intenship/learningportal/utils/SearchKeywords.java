@@ -0,0 +1,85 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.model.Searchable;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Sets the keywords of courses and lectures from their names as they are
+ * saved. Documents saved before keywords were kept are given them on startup.
+ */
+@Component
+@Slf4j
+public class SearchKeywords implements ReactiveBeforeConvertCallback<Searchable> {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public SearchKeywords(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Splits text into lower case words
+     * @param text
+     * @return the distinct words, in their order
+     */
+    public static List<String> words(String text) {
+        if (text == null)
+            return Collections.emptyList();
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sets the keywords of the document from its name
+     * @param searchable
+     */
+    public static void set(Searchable searchable) {
+        searchable.setKeywords(words(searchable.getName()));
+    }
+
+    @Override
+    public Publisher<Searchable> onBeforeConvert(Searchable entity, String collection) {
+        set(entity);
+        return Mono.just(entity);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Long migrated = Flux.concat(migrate(Course.class), migrate(Lecture.class))
+                .reduce(0L, Long::sum)
+                .block();
+
+        if (migrated != null && migrated > 0)
+            log.info("[I58] set the keywords of {} courses and lectures", migrated);
+    }
+
+    private Mono<Long> migrate(Class<?> type) {
+        String collection = mongoTemplate.getCollectionName(type);
+        return mongoTemplate.find(query(where("keywords").exists(false)), Document.class, collection)
+                .concatMap(document -> mongoTemplate.updateFirst(query(where("_id").is(document.get("_id"))),
+                        new Update().set("keywords", words(document.getString("name"))), collection))
+                .count();
+    }
+}
@@ -0,0 +1,99 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.model.SearchHit;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Searches courses and lectures by the text indexes on their names and
+ * descriptions, and suggests them by the prefix of a word of their names.
+ * Only the fields of the hits are read.
+ */
+@Component
+public class SearchUtility {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public SearchUtility(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Returns the courses and lectures most relevant to the text. Names weigh
+     * three times as much as descriptions
+     * @param text words to search for, any of which may match
+     * @param limit
+     * @return Flux of SearchHit, most relevant first
+     */
+    public Flux<SearchHit> search(String text, int limit) {
+        Query courses = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+                .sortByScore()
+                .limit(limit);
+        courses.fields().include("name");
+
+        Query lectures = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+                .sortByScore()
+                .limit(limit);
+        lectures.fields().include("courseId").include("lectureId").include("name");
+
+        return Flux.merge(find(courses, Course.class), find(lectures, Lecture.class))
+                .sort(Comparator.comparing(SearchHit::getScore).reversed())
+                .take(limit);
+    }
+
+    /**
+     * Suggests courses, then lectures, as the text is typed. The last word
+     * of the text is matched as the prefix of a word of the name, and the
+     * others as whole words
+     * @param text
+     * @param limit
+     * @return Flux of SearchHit, ordered by name
+     */
+    public Flux<SearchHit> suggest(String text, int limit) {
+        List<String> words = SearchKeywords.words(text);
+        if (words.isEmpty())
+            return Flux.empty();
+
+        // Keywords only hold letters and digits, so the prefix needs no escaping
+        // and the anchored regex is answered from the keywords index
+        String prefix = words.get(words.size() - 1);
+        List<String> complete = words.subList(0, words.size() - 1);
+        Criteria criteria = complete.isEmpty() ? where("keywords").regex("^" + prefix)
+                : new Criteria().andOperator(where("keywords").all(complete), where("keywords").regex("^" + prefix));
+
+        Query courses = new Query(criteria).with(Sort.by("name")).limit(limit);
+        courses.fields().include("name");
+
+        Query lectures = new Query(criteria).with(Sort.by("name")).limit(limit);
+        lectures.fields().include("courseId").include("lectureId").include("name");
+
+        return Flux.concat(find(courses, Course.class), find(lectures, Lecture.class))
+                .take(limit);
+    }
+
+    private Flux<SearchHit> find(Query query, Class<?> type) {
+        return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(type))
+                .map(document -> {
+                    Number score = document.get("score", Number.class);
+                    Double relevance = score == null ? null : score.doubleValue();
+                    return type == Course.class
+                            ? new SearchHit(document.get("_id").toString(), null, document.getString("name"), relevance)
+                            : new SearchHit(document.getString("courseId"), document.getString("lectureId"),
+                                    document.getString("name"), relevance);
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.UploadSession;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import com.daksh.ibm.intenship.learningportal.repository.UploadSessionRepository;
+import com.daksh.ibm.intenship.learningportal.utils.UploadUtility.UploadState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+
+/**
+ * Periodically aborts resumable uploads that went stale, so the parts
+ * of abandoned uploads do not stay in the bucket.
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(S3ClientConfigurationProperties.class)
+public class UploadSessionSweeper {
+
+    private final UploadSessionRepository sessionRepository;
+    private final UploadUtility uploadUtility;
+    private final S3ClientConfigurationProperties s3props;
+
+    private Disposable sweeper;
+
+    public UploadSessionSweeper(UploadSessionRepository sessionRepository, UploadUtility uploadUtility,
+                                S3ClientConfigurationProperties s3props) {
+        this.sessionRepository = sessionRepository;
+        this.uploadUtility = uploadUtility;
+        this.s3props = s3props;
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Flux.interval(s3props.getUploadSessionSweepInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> sweep()
+                        .onErrorResume(error -> {
+                            log.error("[E51] sweep failed", error);
+                            return Mono.just(0L);
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.dispose();
+    }
+
+    /**
+     * Aborts every session that has not been modified within the configured TTL
+     * @return Mono of the number of aborted sessions
+     */
+    public Mono<Long> sweep() {
+        Date staleBefore = new Date(System.currentTimeMillis() - s3props.getUploadSessionTtl().toMillis());
+
+        return sessionRepository.findByLastModifiedDateBefore(staleBefore)
+                .flatMap(this::abort, 4)
+                .count()
+                .doOnNext(count -> {
+                    if (count > 0)
+                        log.info("[I70] aborted {} stale upload sessions", count);
+                });
+    }
+
+    private Mono<UploadSession> abort(UploadSession session) {
+        log.info("[I76] aborting stale upload: session={}, fileKey={}, lastModified={}",
+                session.getId(), session.getFileKey(), session.getLastModifiedDate());
+
+        return uploadUtility.abortUpload(new UploadState(session.getBucket(),
+                session.getFileKey(), session.getUploadId(), session.getPartSize()))
+                .then()
+                // already aborted or completed outside of the session
+                .onErrorResume(NoSuchUploadException.class, error -> Mono.empty())
+                .then(sessionRepository.delete(session))
+                .thenReturn(session);
+    }
+}
@@ -1,27 +1,35 @@
 package com.daksh.ibm.intenship.learningportal.utils;
 
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.UploadSession.UploadedPart;
 import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Component;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 import software.amazon.awssdk.core.SdkResponse;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.utils.BinaryUtils;
 
-import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Upload
@@ -35,9 +43,13 @@ public class UploadUtility {
 
     private S3ClientConfigurationProperties s3props;
 
-    public UploadUtility(S3AsyncClient s3AsyncClient, S3ClientConfigurationProperties s3props) {
+    private ContentIndex contentIndex;
+
+    public UploadUtility(S3AsyncClient s3AsyncClient, S3ClientConfigurationProperties s3props,
+                         ContentIndex contentIndex) {
         this.s3AsyncClient = s3AsyncClient;
         this.s3props = s3props;
+        this.contentIndex = contentIndex;
     }
 
     /**
@@ -50,41 +62,157 @@ public class UploadUtility {
     }
 
     /**
-     * Upload a single file part to the requested bucket
+     * Start a multipart upload of fileKey
+     * @param bucket
+     * @param fileKey
+     * @param filename original file name, stored in the object metadata
+     * @param mediaType
+     * @return Mono of the uploadId
+     */
+    public Mono<String> createUpload(String bucket, String fileKey, String filename, MediaType mediaType) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("filename", filename);
+
+        return Mono.fromFuture(s3AsyncClient
+                .createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .contentType(mediaType.toString())
+                        .key(fileKey)
+                        .metadata(metadata)
+                        .bucket(bucket)
+                        .acl(ObjectCannedACL.PUBLIC_READ_WRITE)
+                        .build()))
+                .map(response -> {
+                    checkResult(response);
+                    log.info("[I183] uploadId={}", response.uploadId());
+                    return response.uploadId();
+                });
+    }
+
+    /**
+     * Part size for a file of the given length: the smallest size that fits the file
+     * into the maximum number of parts, rounded up to a whole MiB and kept within the
+     * configured minimum and maximum part size.
+     * @param contentLength file length, or a negative value if unknown
+     * @return part size in bytes
+     */
+    public int partSize(long contentLength) {
+        if (contentLength <= 0)
+            return s3props.getMultipartMinPartSize();
+
+        final long mebibyte = 1024 * 1024;
+        long partSize = (contentLength + s3props.getMultipartMaxParts() - 1) / s3props.getMultipartMaxParts();
+        partSize = (partSize + mebibyte - 1) / mebibyte * mebibyte;
+
+        return (int) Math.min(Math.max(partSize, s3props.getMultipartMinPartSize()),
+                s3props.getMultipartMaxPartSize());
+    }
+
+    /**
+     * Split content into parts of at least {@link UploadState#partSize} bytes.
+     * Only the last part may be smaller. If the part size of the upload may grow,
+     * it doubles every {@link S3ClientConfigurationProperties#getMultipartPartSizeGrowthInterval()}
+     * parts, so uploads of unknown length are not capped by the part limit.
      * @param uploadState
-     * @param buffer
+     * @param content
+     * @return Flux of the buffers of each part
+     */
+    public Flux<List<DataBuffer>> bufferParts(UploadState uploadState, Flux<DataBuffer> content) {
+        return content.bufferUntil(buffer -> {
+            uploadState.buffered += buffer.readableByteCount();
+            if (uploadState.buffered >= uploadState.partSize) {
+                log.info("[I173] bufferUntil: returning true, " +
+                        "bufferedBytes={}, partSize={}, uploadId={}",
+                        uploadState.buffered, uploadState.partSize, uploadState.uploadId);
+                uploadState.buffered = 0; // reset buffer
+                uploadState.bufferedParts++;
+                if (uploadState.growPartSize
+                        && uploadState.bufferedParts % s3props.getMultipartPartSizeGrowthInterval() == 0)
+                    uploadState.partSize = Math.min(uploadState.partSize * 2, s3props.getMultipartMaxPartSize());
+                return true;
+            } else {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Upload a single file part to the requested bucket. The part is sent straight
+     * from the received buffers, which are released once the request future completes,
+     * as the client may still be reading them after the subscriber cancels.
+     * @param uploadState
+     * @param partNumber 1-based part number, assigned in stream order by the caller
+     * @param buffers
      * @return
      */
-    public Mono<CompletedPart> uploadPart(UploadState uploadState, ByteBuffer buffer) {
-        final int partNumber = ++uploadState.partCounter;
-        log.info("[I218] uploadPart: partNumber={}, contentLength={}", partNumber, buffer.capacity());
-
-        CompletableFuture<UploadPartResponse> request = s3AsyncClient.uploadPart(UploadPartRequest.builder()
-                .bucket(s3props.getBucket())
-                .key(uploadState.getFileKey())
-                .partNumber(partNumber)
-                .uploadId(uploadState.uploadId)
-                .contentLength((long) buffer.capacity())
-                .build(), AsyncRequestBody.fromByteBuffer(buffer));
+    public Mono<UploadedPart> uploadPart(UploadState uploadState, int partNumber, List<DataBuffer> buffers) {
+        final DataBufferAsyncRequestBody body = new DataBufferAsyncRequestBody(buffers);
+        final long contentLength = body.contentLength().orElse(0L);
+        log.info("[I218] uploadPart: partNumber={}, contentLength={}, chunks={}",
+                partNumber, contentLength, buffers.size());
 
         return Mono
-                .fromFuture(request)
+                .defer(() -> Mono.fromFuture(s3AsyncClient.uploadPart(UploadPartRequest.builder()
+                        .bucket(uploadState.getBucket())
+                        .key(uploadState.getFileKey())
+                        .partNumber(partNumber)
+                        .uploadId(uploadState.uploadId)
+                        .contentLength(contentLength)
+                        .build(), body)
+                        .whenComplete((response, error) -> body.release())))
                 .map(uploadPartResult -> {
                     checkResult(uploadPartResult);
                     log.info("[I230] uploadPart complete: part={}, etags={}", partNumber, uploadPartResult.eTag());
-                    return CompletedPart.builder()
-                            .eTag(uploadPartResult.eTag())
-                            .partNumber(partNumber)
-                            .build();
+                    return new UploadedPart(partNumber, uploadPartResult.eTag(), contentLength);
                 });
     }
 
-    public Mono<CompleteMultipartUploadResponse> completeUpload(UploadState state) {
+    /**
+     * Parts of the upload that may be in flight at once: at most
+     * {@link S3ClientConfigurationProperties#getMultipartMaxInFlightParts()}, and no more
+     * than fit in {@link S3ClientConfigurationProperties#getMultipartMaxInFlightBytes()}
+     * at the largest part size the upload can reach, but always one.
+     * @param uploadState
+     * @return number of parts
+     */
+    public int inFlightParts(UploadState uploadState) {
+        long largestPartSize = uploadState.growPartSize ? s3props.getMultipartMaxPartSize() : uploadState.partSize;
+        long parts = s3props.getMultipartMaxInFlightBytes() / Math.max(largestPartSize, 1);
+        return (int) Math.max(1, Math.min(parts, s3props.getMultipartMaxInFlightParts()));
+    }
+
+    /**
+     * Upload the buffered parts of a multipart upload, keeping at most
+     * {@link #inFlightParts(UploadState)} parts in flight.
+     * Part numbers are assigned from the position of the part in the stream, so parts
+     * may complete in any order.
+     * @param uploadState
+     * @param parts buffers of each part, in stream order
+     * @param firstPartNumber part number of the first part in the stream
+     * @return Flux of uploaded parts, in completion order
+     */
+    public Flux<UploadedPart> uploadParts(UploadState uploadState, Flux<List<DataBuffer>> parts, int firstPartNumber) {
+        return parts
+                .index()
+                .flatMap(part -> uploadPart(uploadState, firstPartNumber + part.getT1().intValue(), part.getT2()),
+                        inFlightParts(uploadState))
+                .doOnDiscard(Tuple2.class, part -> Utility.release((Collection<?>) part.getT2()))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    public Mono<CompleteMultipartUploadResponse> completeUpload(UploadState state, Collection<UploadedPart> uploadedParts) {
         log.info("[I202] completeUpload: bucket={}, fileKey={}, completedParts.size={}", state.getBucket(),
-                state.getFileKey(), state.completedParts.size());
+                state.getFileKey(), uploadedParts.size());
+
+        List<CompletedPart> completedParts = uploadedParts.stream()
+                .sorted(Comparator.comparingInt(UploadedPart::getPartNumber))
+                .map(part -> CompletedPart.builder()
+                        .eTag(part.getETag())
+                        .partNumber(part.getPartNumber())
+                        .build())
+                .collect(Collectors.toList());
 
         CompletedMultipartUpload multipartUpload = CompletedMultipartUpload.builder()
-                .parts(state.completedParts.values())
+                .parts(completedParts)
                 .build();
 
         return Mono.fromFuture(s3AsyncClient.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
@@ -95,79 +223,189 @@ public class UploadUtility {
                 .build()));
     }
 
+    /**
+     * Abort a multipart upload, deleting the parts uploaded so far
+     * @param state
+     * @return
+     */
+    public Mono<AbortMultipartUploadResponse> abortUpload(UploadState state) {
+        log.info("[I209] abortUpload: bucket={}, fileKey={}, uploadId={}", state.getBucket(),
+                state.getFileKey(), state.uploadId);
+
+        return Mono.fromFuture(s3AsyncClient.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(state.getBucket())
+                .key(state.getFileKey())
+                .uploadId(state.uploadId)
+                .build()));
+    }
+
+    /**
+     * Abort the multipart upload, if one was started. A failure is only logged,
+     * as the upload it was meant to clean up has already failed
+     * @param state
+     * @return Mono signalling completion
+     */
+    private Mono<Void> abandonUpload(UploadState state) {
+        if (state.uploadId == null)
+            return Mono.empty();
+
+        return abortUpload(state)
+                .then()
+                // already aborted or completed
+                .onErrorResume(NoSuchUploadException.class, error -> Mono.empty())
+                .onErrorResume(error -> {
+                    log.warn("[W232] abortUpload failed: fileKey={}, uploadId={}: {}", state.getFileKey(),
+                            state.uploadId, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
     /**
      * Save file using a multipart upload. This method does not require any temporary
      * storage at the REST service.
      * @param headers
      * @param bucket Bucket name
      * @param filePart Uploaded file
-     * @return
+     * @return Mono of the saved file. Its fileKey is the key of an existing object
+     * if the same content was uploaded before.
      */
-    public Mono<String> saveFile(HttpHeaders headers, String bucket, FilePart filePart) {
+    public Mono<SavedFile> saveFile(HttpHeaders headers, String bucket, FilePart filePart) {
 
         // Generate a file key for this upload
         String fileKey = UUID.randomUUID().toString();
 
         // Gather metadata
-        Map<String, String> metadata = new HashMap<>();
         String filename = filePart.filename();
         if (filename == null)
             filename = fileKey;
 
-        metadata.put("filename", filename);
-
         MediaType mediaType = filePart.headers().getContentType();
         if (mediaType == null)
             mediaType = MediaType.APPLICATION_OCTET_STREAM;
 
-        // Create a multipart upload request
-        CompletableFuture<CreateMultipartUploadResponse> uploadRequest = s3AsyncClient
-                .createMultipartUpload(CreateMultipartUploadRequest.builder()
-                        .contentType(mediaType.toString())
-                        .key(fileKey)
-                        .metadata(metadata)
-                        .bucket(bucket)
-                        .acl(ObjectCannedACL.PUBLIC_READ_WRITE)
-                        .build());
-
         // This variable will hold the upload state that we must keep
         // around until all uploads complete
         final UploadState uploadState = new UploadState(bucket, fileKey);
 
-        return Mono.fromFuture(uploadRequest)
-                .flatMapMany((response) -> {
-                    checkResult(response);
-                    uploadState.uploadId = response.uploadId();
-                    log.info("[I183] uploadId={}", response.uploadId());
-                    return filePart.content();
-                }).bufferUntil(buffer -> {
-                    uploadState.buffered += buffer.readableByteCount();
-                    if (uploadState.buffered >= s3props.getMultipartMinPartSize()) {
-                        log.info("[I173] bufferUntil: returning true, " +
-                                "bufferedBytes={}, partCounter={}, " +
-                                "uploadId={}", uploadState.buffered,
-                                uploadState.partCounter, uploadState.uploadId);
-                        uploadState.buffered = 0; // reset buffer
-                        return true;
-                    } else {
-                        return false;
-                    }
-                }).map(Utility::concatBuffers)
-                .flatMap(buffer -> uploadPart(uploadState, buffer))
-                .onBackpressureBuffer()
-                .reduce(uploadState, (state, completedPart) -> {
-                    log.info("[I188] completed: partNumber={}, etag{}",
-                            completedPart.partNumber(), completedPart.eTag());
-                    state.completedParts.put(completedPart.partNumber(), completedPart);
-                    return state;
+        // Size the parts from the declared part length, or from the request length,
+        // which is an upper bound of the file size. Without either, start with the
+        // minimum part size and let it grow as parts are uploaded
+        long contentLength = filePart.headers().getContentLength();
+        if (contentLength < 0)
+            contentLength = headers.getContentLength();
+
+        uploadState.partSize = partSize(contentLength);
+        uploadState.growPartSize = contentLength < 0;
+        log.info("[I161] saveFile: fileKey={}, contentLength={}, partSize={}", fileKey,
+                contentLength, uploadState.partSize);
+
+        final String objectFilename = filename;
+        final MediaType objectMediaType = mediaType;
+
+        // Hash the content while it streams through, for deduplication
+        final MessageDigest digest = Utility.sha256();
+        Flux<DataBuffer> content = filePart.content()
+                .doOnNext(buffer -> {
+                    digest.update(buffer.asByteBuffer());
+                    uploadState.size += buffer.readableByteCount();
+                });
+
+        // Buffer the first part before choosing how to upload. If the file ends
+        // before the part is full, it is sent with a single PutObject request;
+        // otherwise a multipart upload is started with the first part included.
+        return bufferParts(uploadState, content)
+                .switchOnFirst((first, parts) -> {
+                    if (first.hasValue() && uploadState.bufferedParts > 0)
+                        return createUpload(bucket, fileKey, objectFilename, objectMediaType)
+                                .flatMapMany(uploadId -> {
+                                    uploadState.uploadId = uploadId;
+                                    return uploadParts(uploadState, parts, 1);
+                                })
+                                .collectList()
+                                .flatMap(uploadedParts -> completeUpload(uploadState, uploadedParts))
+                                .map(response -> {
+                                    checkResult(response);
+                                    return response.eTag();
+                                })
+                                // parts of a failed or cancelled upload are not kept
+                                .onErrorResume(error -> abandonUpload(uploadState).then(Mono.error(error)))
+                                .doOnCancel(() -> abandonUpload(uploadState).subscribe());
+
+                    return parts
+                            .flatMapIterable(Function.identity())
+                            .collectList()
+                            .flatMap(buffers -> putObject(uploadState, objectFilename, objectMediaType, buffers))
+                            .map(response -> {
+                                checkResult(response);
+                                return response.eTag();
+                            });
                 })
-                .flatMap(state -> completeUpload(state))
-                .map(response -> {
-                    checkResult(response);
-                    return uploadState.getFileKey();
+                .doOnDiscard(List.class, Utility::release)
+                .next()
+                .flatMap(eTag -> deduplicate(bucket, new SavedFile(fileKey, BinaryUtils.toHex(digest.digest()),
+                        uploadState.size, new ContentMetadata(fileKey, uploadState.size, objectMediaType.toString(),
+                                objectFilename, eTag, new Date()))));
+    }
+
+    /**
+     * Indexes a newly uploaded object by its content hash. If the content was
+     * already stored, the new object is deleted and the existing one is used instead.
+     * @param bucket
+     * @param savedFile the uploaded object
+     * @return Mono of the object to reference
+     */
+    public Mono<SavedFile> deduplicate(String bucket, SavedFile savedFile) {
+        return contentIndex.register(savedFile.getContentHash(), savedFile.getMetadata())
+                .flatMap(object -> {
+                    if (object.getFileKey().equals(savedFile.getFileKey()))
+                        return Mono.just(savedFile);
+
+                    log.info("[I262] duplicate content: fileKey={}, existing={}, hash={}",
+                            savedFile.getFileKey(), object.getFileKey(), object.getHash());
+                    return deleteObject(bucket, savedFile.getFileKey())
+                            .thenReturn(new SavedFile(object.getFileKey(), object.getHash(), object.getSize(),
+                                    object.toMetadata(savedFile.getMetadata().getContentType(),
+                                            savedFile.getMetadata().getFilename())));
                 });
     }
 
+    public Mono<DeleteObjectResponse> deleteObject(String bucket, String fileKey) {
+        return Mono.fromFuture(s3AsyncClient.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucket)
+                .key(fileKey)
+                .build()));
+    }
+
+    /**
+     * Upload a file that fits in a single part with one PutObject request. The
+     * buffers are released once the request future completes
+     * @param uploadState
+     * @param filename original file name, stored in the object metadata
+     * @param mediaType
+     * @param buffers file content
+     * @return
+     */
+    public Mono<PutObjectResponse> putObject(UploadState uploadState, String filename, MediaType mediaType,
+                                             List<DataBuffer> buffers) {
+        final DataBufferAsyncRequestBody body = new DataBufferAsyncRequestBody(buffers);
+        final long contentLength = body.contentLength().orElse(0L);
+        log.info("[I236] putObject: fileKey={}, contentLength={}", uploadState.getFileKey(), contentLength);
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("filename", filename);
+
+        return Mono
+                .defer(() -> Mono.fromFuture(s3AsyncClient.putObject(PutObjectRequest.builder()
+                        .bucket(uploadState.getBucket())
+                        .key(uploadState.getFileKey())
+                        .contentType(mediaType.toString())
+                        .contentLength(contentLength)
+                        .metadata(metadata)
+                        .acl(ObjectCannedACL.PUBLIC_READ_WRITE)
+                        .build(), body)
+                        .whenComplete((response, error) -> body.release())));
+    }
+
     public static class UploadFailedException extends RuntimeException {
 
         private static final long serialVersionUID = 1L;
@@ -208,20 +446,37 @@ public class UploadUtility {
         }
     }
 
+    @Data
+    @AllArgsConstructor
+    public static class SavedFile {
+        String fileKey;
+        String contentHash;
+        long size;
+        ContentMetadata metadata;
+    }
+
     public static class UploadState {
         private final String bucket;
         private final String fileKey;
 
         public String uploadId;
-        public int partCounter;
-        public Map<Integer, CompletedPart> completedParts = new HashMap<>();
-        public int buffered = 0;
+        public int partSize;
+        public boolean growPartSize = false;
+        public int bufferedParts = 0;
+        public long buffered = 0;
+        public long size = 0;
 
         public UploadState(String bucket, String fileKey) {
             this.bucket = bucket;
             this.fileKey = fileKey;
         }
 
+        public UploadState(String bucket, String fileKey, String uploadId, int partSize) {
+            this(bucket, fileKey);
+            this.uploadId = uploadId;
+            this.partSize = partSize;
+        }
+
         public String getBucket() {
             return bucket;
         }
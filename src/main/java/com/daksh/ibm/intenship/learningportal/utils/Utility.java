@@ -2,12 +2,11 @@ package com.daksh.ibm.intenship.learningportal.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
-import reactor.core.Exceptions;
-import software.amazon.awssdk.core.SdkResponse;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import org.springframework.core.io.buffer.DataBufferUtils;
 
-import java.nio.ByteBuffer;
-import java.util.List;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 
 /**
  * Utility class containing helper methods
@@ -15,26 +14,42 @@ import java.util.List;
 @Slf4j
 public class Utility {
     /**
-     * Concatenates buffers in the list into a ByteBuffer
+     * Returns the number of readable bytes in the buffers
      * @param buffers
      * @return
      */
-    public static ByteBuffer concatBuffers(List<DataBuffer> buffers) {
-        log.info("[I198] creating ByteBuffer from {} chunks", buffers.size());
-
-        int partSize = 0;
+    public static long readableByteCount(Collection<DataBuffer> buffers) {
+        long size = 0;
         for (DataBuffer buffer: buffers)
-            partSize += buffer.readableByteCount();
+            size += buffer.readableByteCount();
 
-        ByteBuffer partData = ByteBuffer.allocate(partSize);
-        buffers.forEach(dataBuffer -> partData.put(dataBuffer.asByteBuffer()));
+        return size;
+    }
 
-        // Reset read pointer to first byte
-        partData.rewind();
+    /**
+     * Releases every DataBuffer in the collection. Used for buffers
+     * discarded by a cancelled or failed upload.
+     * @param buffers
+     */
+    public static void release(Collection<?> buffers) {
+        log.debug("[I198] releasing {} discarded chunks", buffers.size());
 
-        log.info("[I208] partData: size{}", partData.capacity());
+        for (Object buffer: buffers)
+            if (buffer instanceof DataBuffer)
+                DataBufferUtils.release((DataBuffer) buffer);
+    }
 
-        return partData;
+    /**
+     * Returns a new SHA-256 digest, used to address content by its hash
+     * @return
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
     }
 
 }
@@ -0,0 +1,82 @@
+package com.daksh.ibm.intenship.learningportal.model;
+
+import com.daksh.ibm.intenship.learningportal.model.UploadSession.UploadedPart;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class UploadSessionTests {
+
+	@Test
+	void newSessionResumesFromTheStart() {
+		UploadSession session = new UploadSession();
+
+		assertEquals(1, session.getNextPartNumber());
+		assertEquals(0, session.getOffset());
+		assertEquals(Collections.emptyList(), session.getContiguousParts());
+		assertEquals(Collections.emptyList(), session.getStalePartNumbers());
+	}
+
+	@Test
+	void contiguousPartsSetTheOffset() {
+		UploadSession session = session(part(1, 100), part(2, 100), part(3, 40));
+
+		assertEquals(4, session.getNextPartNumber());
+		assertEquals(240, session.getOffset());
+		assertEquals(Arrays.asList(part(1, 100), part(2, 100), part(3, 40)), session.getContiguousParts());
+		assertEquals(Collections.emptyList(), session.getStalePartNumbers());
+	}
+
+	@Test
+	void partsAfterAGapAreStale() {
+		UploadSession session = session(part(1, 100), part(2, 100), part(4, 100), part(5, 60));
+
+		assertEquals(3, session.getNextPartNumber());
+		assertEquals(200, session.getOffset());
+		assertEquals(Arrays.asList(part(1, 100), part(2, 100)), session.getContiguousParts());
+		assertEquals(new HashSet<>(Arrays.asList(4, 5)), new HashSet<>(session.getStalePartNumbers()));
+	}
+
+	@Test
+	void missingFirstPartMakesEveryPartStale() {
+		UploadSession session = session(part(2, 100), part(3, 100));
+
+		assertEquals(1, session.getNextPartNumber());
+		assertEquals(0, session.getOffset());
+		assertEquals(Collections.emptyList(), session.getContiguousParts());
+		assertEquals(new HashSet<>(Arrays.asList(2, 3)), new HashSet<>(session.getStalePartNumbers()));
+	}
+
+	@Test
+	void responseHasTheResumePointButNotTheLease() {
+		UploadSession session = session(part(1, 100), part(3, 100));
+		session.setLeaseId("lease");
+
+		JsonNode json = new ObjectMapper().valueToTree(session);
+
+		assertEquals(2, json.get("nextPartNumber").asInt());
+		assertEquals(100, json.get("offset").asLong());
+		assertFalse(json.has("leaseId"));
+		assertFalse(json.has("contiguousParts"));
+		assertFalse(json.has("stalePartNumbers"));
+	}
+
+	private static UploadSession session(UploadedPart... parts) {
+		UploadSession session = new UploadSession();
+		for (UploadedPart part : parts)
+			session.getParts().put(Integer.toString(part.getPartNumber()), part);
+		return session;
+	}
+
+	private static UploadedPart part(int partNumber, long size) {
+		return new UploadedPart(partNumber, "\"etag" + partNumber + "\"", size);
+	}
+
+}
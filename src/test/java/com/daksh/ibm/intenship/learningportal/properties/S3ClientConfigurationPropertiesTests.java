@@ -0,0 +1,42 @@
+package com.daksh.ibm.intenship.learningportal.properties;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3ClientConfigurationPropertiesTests {
+
+	@Test
+	void defaultsAreValid() {
+		assertFalse(validate(new S3ClientConfigurationProperties()).hasErrors());
+	}
+
+	@Test
+	void presignRenewBeforeMustBeShorterThanTheDuration() {
+		S3ClientConfigurationProperties properties = new S3ClientConfigurationProperties();
+		properties.setPresignDuration(Duration.ofMinutes(5));
+		properties.setPresignRenewBefore(Duration.ofMinutes(5));
+
+		Errors errors = validate(properties);
+
+		assertTrue(errors.hasFieldErrors("presignRenewBefore"));
+		assertTrue(errors.getFieldError("presignRenewBefore").getDefaultMessage()
+				.contains("aws.s3.presign_duration"));
+
+		properties.setPresignRenewBefore(Duration.ofMinutes(6));
+		assertEquals(1, validate(properties).getErrorCount());
+	}
+
+	private static Errors validate(S3ClientConfigurationProperties properties) {
+		Errors errors = new BeanPropertyBindingResult(properties, "aws.s3");
+		properties.validate(properties, errors);
+		return errors;
+	}
+
+}
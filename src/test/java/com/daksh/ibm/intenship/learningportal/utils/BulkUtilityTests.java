@@ -0,0 +1,127 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.BulkResult;
+import com.daksh.ibm.intenship.learningportal.model.Category;
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import com.daksh.ibm.intenship.learningportal.properties.BulkProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkUtilityTests {
+
+	private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+	private final LectureContent lectureContent = mock(LectureContent.class);
+
+	private final BulkUtility bulkUtility = new BulkUtility(mongoTemplate, new ObjectMapper(), new BulkProperties(),
+			mock(CatalogCache.class), lectureContent);
+
+	@Test
+	void writeErrorsAreReportedUnderTheirRecords() {
+		List<BulkResult.RecordError> errors = new ArrayList<>();
+
+		Set<Integer> failed = BulkUtility.recordErrors(bulkWriteException(0, 2),
+				Arrays.asList(4L, 7L, 9L), Arrays.asList("a", "b", "c"), errors);
+
+		assertEquals(2, failed.size());
+		assertEquals(2, errors.size());
+		assertEquals(4L, errors.get(0).getRecord());
+		assertEquals("a", errors.get(0).getId());
+		assertEquals(9L, errors.get(1).getRecord());
+		assertEquals("c", errors.get(1).getId());
+		assertEquals("E11000 at 2", errors.get(1).getMessage());
+	}
+
+	@Test
+	void partialBatchesImportTheOtherRecords() {
+		MongoCollection<Document> courses = collection("course", Course.class);
+		MongoCollection<Document> lectures = collection("lecture", Lecture.class);
+		when(mongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+		when(lectureContent.acquire(any(List.class))).thenReturn(Mono.empty());
+		when(lectureContent.giveBack(any(List.class))).thenReturn(Mono.empty());
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Category.class)))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+		// The second course is in use, and the second lecture of the third course fails
+		when(courses.bulkWrite(any(List.class), any(BulkWriteOptions.class)))
+				.thenReturn(Mono.error(bulkWriteException(1)));
+		when(lectures.bulkWrite(any(List.class), any(BulkWriteOptions.class)))
+				.thenReturn(Mono.error(bulkWriteException(2)));
+
+		List<BulkResult> results = bulkUtility.importCourses(body(
+				"{\"id\":\"a\",\"categories\":[\"java\"],\"lectures\":{\"0\":{\"name\":\"x\"}}}",
+				"{\"id\":\"b\",\"categories\":[\"java\"]}",
+				"{\"id\":\"c\",\"categories\":[\"java\"],\"lectures\":{\"0\":{\"name\":\"y\"},\"1\":{\"name\":\"z\"}}}"))
+				.collectList()
+				.block();
+
+		assertEquals(1, results.size());
+		BulkResult result = results.get(0);
+		assertEquals(3, result.getRecords());
+		assertEquals(2, result.getInserted());
+		assertEquals(2, result.getErrors().size());
+		assertEquals(1L, result.getErrors().get(0).getRecord());
+		assertEquals("b", result.getErrors().get(0).getId());
+		assertEquals(2L, result.getErrors().get(1).getRecord());
+		assertEquals("c:1", result.getErrors().get(1).getId());
+
+		// Both inserted courses are counted, although a lecture failed
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(Category.class));
+		assertEquals(new Document("courseCount", 2), update.getValue().getUpdateObject().get("$inc"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private MongoCollection<Document> collection(String name, Class<?> type) {
+		MongoCollection<Document> collection = mock(MongoCollection.class);
+		when(mongoTemplate.getCollectionName(type)).thenReturn(name);
+		when(mongoTemplate.getCollection(name)).thenReturn(Mono.just(collection));
+		return collection;
+	}
+
+	private static MongoBulkWriteException bulkWriteException(Integer... indexes) {
+		List<BulkWriteError> errors = new ArrayList<>();
+		for (int index : indexes)
+			errors.add(new BulkWriteError(11000, "E11000 at " + index, new BsonDocument(), index));
+		return new MongoBulkWriteException(BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()),
+				errors, null, new ServerAddress());
+	}
+
+	private static Flux<DataBuffer> body(String... lines) {
+		return Flux.just(new DefaultDataBufferFactory()
+				.wrap(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)));
+	}
+
+}
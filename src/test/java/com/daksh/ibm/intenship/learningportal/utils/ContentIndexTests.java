@@ -0,0 +1,164 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import com.daksh.ibm.intenship.learningportal.model.ContentObject;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContentIndexTests {
+
+	private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+	private final ContentIndex contentIndex = new ContentIndex(mongoTemplate);
+
+	@Test
+	void registerAddsAReferenceAndIndexesNewContent() {
+		ContentMetadata metadata = new ContentMetadata("key", 10, "text/plain", "a.txt", "\"abc\"", new Date());
+		ContentObject indexed = object("hash", "key", 1);
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.just(indexed));
+
+		StepVerifier.create(contentIndex.register("hash", metadata))
+				.expectNext(indexed)
+				.verifyComplete();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+		verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(),
+				eq(ContentObject.class));
+
+		assertEquals(new Document("_id", "hash"), query.getValue().getQueryObject());
+		Document updateObject = update.getValue().getUpdateObject();
+		assertEquals(new Document("refCount", 1), updateObject.get("$inc"));
+		assertEquals("key", ((Document) updateObject.get("$setOnInsert")).get("fileKey"));
+		assertTrue(options.getValue().isUpsert());
+		assertTrue(options.getValue().isReturnNew());
+	}
+
+	@Test
+	void registerRetriesARacingInsert() {
+		AtomicInteger attempts = new AtomicInteger();
+		ContentObject existing = object("hash", "first", 2);
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.defer(() -> attempts.incrementAndGet() == 1
+						? Mono.error(new DuplicateKeyException("E11000"))
+						: Mono.just(existing)));
+
+		StepVerifier.create(contentIndex.register("hash", new ContentMetadata()))
+				.expectNext(existing)
+				.verifyComplete();
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	void releaseKeepsReferencedObjects() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.just(object("hash", "key", 1)));
+
+		StepVerifier.create(contentIndex.release("key"))
+				.expectNext(false)
+				.verifyComplete();
+
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class),
+				eq(ContentObject.class));
+		assertEquals(new Document("refCount", -1), update.getValue().getUpdateObject().get("$inc"));
+		verify(mongoTemplate, never()).remove(any(Query.class), eq(ContentObject.class));
+	}
+
+	@Test
+	void releaseRemovesTheLastReference() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.just(object("hash", "key", 0)));
+		when(mongoTemplate.remove(any(Query.class), eq(ContentObject.class)))
+				.thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+		StepVerifier.create(contentIndex.release("key"))
+				.expectNext(true)
+				.verifyComplete();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate).remove(query.capture(), eq(ContentObject.class));
+		assertEquals(new Document("_id", "hash").append("refCount", new Document("$lte", 0)),
+				query.getValue().getQueryObject());
+	}
+
+	@Test
+	void releaseKeepsObjectsRegisteredAgain() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.just(object("hash", "key", 0)));
+		when(mongoTemplate.remove(any(Query.class), eq(ContentObject.class)))
+				.thenReturn(Mono.just(DeleteResult.acknowledged(0)));
+
+		StepVerifier.create(contentIndex.release("key"))
+				.expectNext(false)
+				.verifyComplete();
+	}
+
+	@Test
+	void releaseOfUnindexedObjects() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+				eq(ContentObject.class))).thenReturn(Mono.empty());
+
+		StepVerifier.create(contentIndex.release("key"))
+				.expectNext(true)
+				.verifyComplete();
+	}
+
+	@Test
+	void acquireAddsAReferenceToIndexedObjects() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(ContentObject.class)))
+				.thenReturn(Mono.just(object("hash", "key", 1)));
+
+		StepVerifier.create(contentIndex.acquire("key"))
+				.expectNext(true)
+				.verifyComplete();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).findAndModify(query.capture(), update.capture(), eq(ContentObject.class));
+		assertEquals(new Document("fileKey", "key"), query.getValue().getQueryObject());
+		assertEquals(new Document("refCount", 1), update.getValue().getUpdateObject().get("$inc"));
+	}
+
+	@Test
+	void acquireOfUnindexedObjects() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(ContentObject.class)))
+				.thenReturn(Mono.empty());
+
+		StepVerifier.create(contentIndex.acquire("key"))
+				.expectNext(false)
+				.verifyComplete();
+	}
+
+	private static ContentObject object(String hash, String fileKey, long refCount) {
+		ContentObject object = new ContentObject();
+		object.setHash(hash);
+		object.setFileKey(fileKey);
+		object.setRefCount(refCount);
+		return object;
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DataBufferAsyncRequestBodyTests {
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+	@Test
+	void streamsBuffersAndReleasesThem() {
+		List<DataBuffer> buffers = Arrays.asList(buffer("hello "), buffer("world"));
+		DataBufferAsyncRequestBody body = new DataBufferAsyncRequestBody(buffers);
+
+		assertEquals(Optional.of(11L), body.contentLength());
+
+		// the SDK subscribes again when it retries a request
+		for (int i = 0; i < 2; i++) {
+			StepVerifier.create(Flux.from(body).map(this::string))
+					.expectNext("hello ", "world")
+					.verifyComplete();
+		}
+
+		body.release();
+		body.release();
+
+		buffers.forEach(buffer -> assertEquals(0, ((NettyDataBuffer) buffer).getNativeBuffer().refCnt()));
+
+		StepVerifier.create(Flux.from(body))
+				.expectError(IllegalStateException.class)
+				.verify();
+	}
+
+	private DataBuffer buffer(String value) {
+		return bufferFactory.wrap(bufferFactory.getByteBufAllocator()
+				.directBuffer()
+				.writeBytes(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private String string(ByteBuffer buffer) {
+		return StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ContentMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.reactivestreams.Subscription;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloadUtilityTests {
+
+	private static final String CONTENT = "0123456789";
+
+	private static final Instant LAST_MODIFIED = Instant.ofEpochMilli(1_600_000_000_123L);
+
+	private final ContentMetadata metadata = new ContentMetadata("key", CONTENT.length(), "text/plain",
+			"digits.txt", "\"abc\"", Date.from(LAST_MODIFIED));
+
+	@Test
+	void parsesRanges() {
+		List<HttpRange> ranges = DownloadUtility.parseRanges(headers(HttpHeaders.RANGE, "bytes=0-4, -3"));
+
+		assertEquals(2, ranges.size());
+		assertEquals(0, ranges.get(0).getRangeStart(CONTENT.length()));
+		assertEquals(4, ranges.get(0).getRangeEnd(CONTENT.length()));
+		assertEquals(7, ranges.get(1).getRangeStart(CONTENT.length()));
+		assertEquals(9, ranges.get(1).getRangeEnd(CONTENT.length()));
+	}
+
+	@Test
+	void ignoresMalformedRanges() {
+		assertTrue(DownloadUtility.parseRanges(new HttpHeaders()).isEmpty());
+		assertTrue(DownloadUtility.parseRanges(headers(HttpHeaders.RANGE, "bytes=5-1")).isEmpty());
+		assertTrue(DownloadUtility.parseRanges(headers(HttpHeaders.RANGE, "items=0-1")).isEmpty());
+	}
+
+	@Test
+	void ifRangeComparesEntityTagsStrongly() {
+		assertTrue(DownloadUtility.ifRangeMatches("\"abc\"", metadata));
+		assertFalse(DownloadUtility.ifRangeMatches("\"abd\"", metadata));
+		assertFalse(DownloadUtility.ifRangeMatches("W/\"abc\"", metadata));
+	}
+
+	@Test
+	void ifRangeComparesDatesToTheSecond() {
+		DateTimeFormatter format = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+		assertTrue(DownloadUtility.ifRangeMatches(format.format(LAST_MODIFIED), metadata));
+		assertFalse(DownloadUtility.ifRangeMatches(format.format(LAST_MODIFIED.plusSeconds(1)), metadata));
+		assertFalse(DownloadUtility.ifRangeMatches("yesterday", metadata));
+	}
+
+	@Test
+	void sendsRangesAsMultipartByteranges() {
+		List<HttpRange> ranges = HttpRange.parseRanges("bytes=0-1, 5-, -2");
+
+		ResponseEntity<Flux<ByteBuffer>> response = DownloadUtility.rangesResponse(metadata, ranges,
+				(start, end) -> Flux.just(ascii(CONTENT.substring(start.intValue(), end.intValue() + 1))));
+
+		assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+		String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+		assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+		String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+		String body = response.getBody()
+				.map(buffer -> StandardCharsets.US_ASCII.decode(buffer).toString())
+				.collect(Collectors.joining())
+				.block();
+
+		assertEquals("\r\n--" + boundary + "\r\n" +
+				"Content-Type: text/plain\r\nContent-Range: bytes 0-1/10\r\n\r\n01" +
+				"\r\n--" + boundary + "\r\n" +
+				"Content-Type: text/plain\r\nContent-Range: bytes 5-9/10\r\n\r\n56789" +
+				"\r\n--" + boundary + "\r\n" +
+				"Content-Type: text/plain\r\nContent-Range: bytes 8-9/10\r\n\r\n89" +
+				"\r\n--" + boundary + "--\r\n", body);
+		assertEquals(body.length(), response.getHeaders().getContentLength());
+		assertEquals("\"abc\"", response.getHeaders().getETag());
+	}
+
+	@Test
+	void rejectsUnsatisfiableRanges() {
+		List<HttpRange> ranges = HttpRange.parseRanges("bytes=0-1, 20-30");
+
+		ResponseEntity<Flux<ByteBuffer>> response = DownloadUtility.rangesResponse(metadata, ranges,
+				(start, end) -> Flux.error(new AssertionError("no range should be read")));
+
+		assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+		assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	void sharedDownloadsKeepPaceWithTheSlowestSubscriber() {
+		int prefetch = 8;
+		AtomicLong read = new AtomicLong();
+		Flux<Tuple2<Long, ByteBuffer>> shared = DownloadUtility.share(Flux.<ByteBuffer>generate(sink -> {
+			read.incrementAndGet();
+			sink.next(ByteBuffer.allocate(1024));
+		}).take(1000), prefetch);
+
+		List<Long> slow = new ArrayList<>();
+		BaseSubscriber<Tuple2<Long, ByteBuffer>> slowSubscriber = new BaseSubscriber<Tuple2<Long, ByteBuffer>>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnNext(Tuple2<Long, ByteBuffer> buffer) {
+				slow.add(buffer.getT1());
+			}
+		};
+		List<Long> fast = new ArrayList<>();
+		shared.subscribe(slowSubscriber);
+		shared.subscribe(buffer -> fast.add(buffer.getT1()));
+
+		for (int i = 1; i < 200; i++) {
+			assertTrue(read.get() - slow.size() <= prefetch, "buffers held: " + (read.get() - slow.size()));
+			assertTrue(fast.size() <= slow.size());
+			slowSubscriber.request(1);
+		}
+		assertEquals(200, slow.size());
+		assertEquals(0, (long) slow.get(0));
+		assertEquals(199, (long) slow.get(199));
+
+		// once the slow subscriber leaves, the fast one reads on alone
+		slowSubscriber.dispose();
+		assertEquals(1000, read.get());
+		assertEquals(999, (long) fast.get(fast.size() - 1));
+	}
+
+	private static HttpHeaders headers(String name, String value) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(name, value);
+		return headers;
+	}
+
+	private static ByteBuffer ascii(String value) {
+		return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+	}
+
+}
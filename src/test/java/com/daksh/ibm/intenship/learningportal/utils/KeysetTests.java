@@ -0,0 +1,109 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Course;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetTests {
+
+	private final Keyset<Course> keyset = new Keyset<>(Course::getId)
+			.key("name", String.class, Course::getName)
+			.key("createdDate", Date.class, Course::getCreatedDate);
+
+	@Test
+	void firstPageHasNoCriteria() {
+		assertEquals(new Document(), keyset.order("name", null).query(null, 10).getQueryObject());
+	}
+
+	@Test
+	void stringIdsAreFollowedByObjectIds() {
+		Keyset.Order<Course> order = keyset.order("id", null);
+		String cursor = order.cursor(course("abc", null, null));
+
+		assertEquals(or(gt("_id", "abc"), type("_id", 7)), query(keyset.order("id", cursor)));
+		assertEquals(lt("_id", "abc"), query(keyset.order("-id", cursor)));
+	}
+
+	@Test
+	void objectIdsArePrecededByStringIds() {
+		String id = new ObjectId().toHexString();
+		String cursor = keyset.order("id", null).cursor(course(id, null, null));
+
+		assertEquals(gt("_id", id), query(keyset.order("id", cursor)));
+		assertEquals(or(lt("_id", id), type("_id", 2)), query(keyset.order("-id", cursor)));
+	}
+
+	@Test
+	void pagesContinueAfterTheSortKey() {
+		Date createdDate = new Date(1_600_000_000_123L);
+		String cursor = keyset.order("createdDate", null).cursor(course("abc", "Java", createdDate));
+
+		Document sameValue = and(new Document("createdDate", createdDate), or(gt("_id", "abc"), type("_id", 7)));
+		assertEquals(or(gt("createdDate", createdDate), sameValue),
+				query(keyset.order("createdDate", cursor)));
+	}
+
+	@Test
+	void nullKeysSortFirst() {
+		String id = new ObjectId().toHexString();
+		String cursor = keyset.order("name", null).cursor(course(id, null, null));
+
+		Document ascending = and(new Document("name", null), gt("_id", id));
+		assertEquals(or(ascending, new Document("name", new Document("$ne", null))),
+				query(keyset.order("name", cursor)));
+
+		Document descending = and(new Document("name", null), or(lt("_id", id), type("_id", 2)));
+		assertEquals(descending, query(keyset.order("-name", cursor)));
+	}
+
+	@Test
+	void rejectsUnknownKeysAndMalformedCursors() {
+		String cursor = keyset.order("name", null).cursor(course("abc", "Java", null));
+
+		assertThrows(IllegalArgumentException.class, () -> keyset.order("price", null));
+		assertThrows(IllegalArgumentException.class, () -> keyset.order("id", cursor));
+		assertThrows(IllegalArgumentException.class, () -> keyset.order("name", "abc"));
+		assertThrows(IllegalArgumentException.class, () -> keyset.order("name", "!!.abc"));
+		assertThrows(IllegalArgumentException.class, () -> keyset.order("createdDate", cursor));
+	}
+
+	private static Document query(Keyset.Order<Course> order) {
+		return order.query(null, 10).getQueryObject();
+	}
+
+	private static Course course(String id, String name, Date createdDate) {
+		Course course = new Course();
+		course.setId(id);
+		course.setName(name);
+		course.setCreatedDate(createdDate);
+		return course;
+	}
+
+	private static Document gt(String field, Object value) {
+		return new Document(field, new Document("$gt", value));
+	}
+
+	private static Document lt(String field, Object value) {
+		return new Document(field, new Document("$lt", value));
+	}
+
+	private static Document type(String field, int type) {
+		return new Document(field, new Document("$type", type));
+	}
+
+	private static Document or(Document... criteria) {
+		return new Document("$or", Arrays.asList(criteria));
+	}
+
+	private static Document and(Document... criteria) {
+		return new Document("$and", Arrays.asList(criteria));
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.Lecture;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LectureContentTests {
+
+	@Test
+	void listsOneFileKeyPerContentEntry() {
+		Map<String, Lecture> lectures = new LinkedHashMap<>();
+		lectures.put("0", lecture("a", "b"));
+		lectures.put("1", lecture("a"));
+		lectures.put("2", new Lecture());
+
+		Map<String, Integer> counts = new HashMap<>();
+		LectureContent.fileKeys(lectures).forEach(fileKey -> counts.merge(fileKey, 1, Integer::sum));
+		assertEquals(2, (int) counts.get("a"));
+		assertEquals(1, (int) counts.get("b"));
+		assertEquals(2, counts.size());
+		assertTrue(LectureContent.fileKeys((Map<String, Lecture>) null).isEmpty());
+	}
+
+	@Test
+	void onlyEntriesNewToTheCourseTakeReferences() {
+		assertEquals(Arrays.asList("c"),
+				LectureContent.added(Arrays.asList("a", "b", "c"), Arrays.asList("a", "b")));
+		assertEquals(Collections.emptyList(),
+				LectureContent.added(Arrays.asList("a"), Arrays.asList("a", "b")));
+	}
+
+	@Test
+	void entriesAreCountedOncePerLecture() {
+		// A second lecture naming held content holds a second reference
+		assertEquals(Arrays.asList("a"),
+				LectureContent.added(Arrays.asList("a", "a", "b"), Arrays.asList("a", "b")));
+		assertEquals(Arrays.asList("a", "a"),
+				LectureContent.added(Arrays.asList("a", "a"), Collections.emptyList()));
+	}
+
+	private static Lecture lecture(String... fileKeys) {
+		Lecture lecture = new Lecture();
+		Map<String, String> contentUrls = new HashMap<>();
+		for (String fileKey : fileKeys)
+			contentUrls.put(fileKey, "https://bucket/" + fileKey);
+		lecture.setContentUrls(contentUrls);
+		return lecture;
+	}
+
+}
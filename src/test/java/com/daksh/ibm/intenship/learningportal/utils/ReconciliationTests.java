@@ -0,0 +1,144 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.model.ReconciliationReport;
+import com.daksh.ibm.intenship.learningportal.properties.ReconciliationProperties;
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconciliationTests {
+
+	private static final Date RECENT_AFTER = new Date(1_600_000_000_000L);
+
+	private static final Date OLD = new Date(RECENT_AFTER.getTime() - 1000);
+
+	private final Reconciliation reconciliation = new Reconciliation(null, null, null,
+			new ReconciliationProperties(), new S3ClientConfigurationProperties());
+
+	private final ReconciliationReport report = new ReconciliationReport("bucket", null, true);
+
+	@Test
+	void referencesWithoutAnObjectAreDangling() {
+		assertTrue(reconcile(reference("a")).isEmpty());
+		assertTrue(reconcile(reference("b"), indexed("b")).isEmpty());
+
+		assertEquals(2, report.getDanglingReferences());
+		assertEquals(2, report.getReferences());
+		assertEquals(0, report.getObjects());
+	}
+
+	@Test
+	void referencedObjectsAreKept() {
+		assertTrue(reconcile(object("a", OLD), reference("a")).isEmpty());
+		assertTrue(reconcile(object("b", OLD), reference("b"), indexed("b"), queued("b")).isEmpty());
+
+		assertEquals(2, report.getObjects());
+		assertEquals(20, report.getBytes());
+		assertEquals(0, report.getOrphans());
+		assertEquals(0, report.getDanglingReferences());
+		assertEquals(0, report.getQueuedObjects());
+	}
+
+	@Test
+	void queuedObjectsAreNotQueuedAgain() {
+		assertTrue(reconcile(object("a", OLD), queued("a")).isEmpty());
+		assertTrue(reconcile(object("b", OLD), indexed("b"), queued("b")).isEmpty());
+
+		assertEquals(2, report.getQueuedObjects());
+		assertEquals(0, report.getOrphans());
+	}
+
+	@Test
+	void recentObjectsAreInTheirGracePeriod() {
+		assertTrue(reconcile(object("a", new Date(RECENT_AFTER.getTime() + 1))).isEmpty());
+
+		assertEquals(1, report.getRecentObjects());
+		assertEquals(0, report.getOrphans());
+	}
+
+	@Test
+	void indexedOrphansAreReportedButKept() {
+		assertTrue(reconcile(object("a", OLD), indexed("a")).isEmpty());
+
+		assertEquals(1, report.getOrphans());
+		assertEquals(1, report.getIndexedOrphans());
+		assertEquals(10, report.getOrphanedBytes());
+	}
+
+	@Test
+	void orphansMayBeDeleted() {
+		assertEquals(Collections.singletonList("a"), reconcile(object("a", OLD)));
+		// the grace period ends before the reconciliation started
+		assertEquals(Collections.singletonList("b"), reconcile(object("b", RECENT_AFTER)));
+
+		assertEquals(2, report.getOrphans());
+		assertEquals(0, report.getIndexedOrphans());
+		assertEquals(20, report.getOrphanedBytes());
+	}
+
+	@Test
+	void keysAreComparedByCodePoint() {
+		String smiley = new String(Character.toChars(0x1F600));
+
+		// UTF-16 puts the surrogates of U+1F600 before U+E000 and U+FFFF
+		assertTrue(smiley.compareTo("\uE000") < 0);
+		assertTrue(Reconciliation.compareCodePoints(smiley, "\uE000") > 0);
+		assertTrue(Reconciliation.compareCodePoints(smiley, "\uFFFF") > 0);
+		assertTrue(Reconciliation.compareCodePoints("\uFFFF", smiley) < 0);
+
+		assertEquals(0, Reconciliation.compareCodePoints("a" + smiley, "a" + smiley));
+		assertTrue(Reconciliation.compareCodePoints(smiley, smiley + "a") < 0);
+		assertTrue(Reconciliation.compareCodePoints(smiley + "a", smiley) > 0);
+		assertTrue(Reconciliation.compareCodePoints("", "a") < 0);
+	}
+
+	@Test
+	void codePointOrderIsTheOrderOfTheUtf8Bytes() {
+		List<String> keys = Arrays.asList("", "a", "ab", "b", "z/\u00E9", "\u00E9", "\u0800", "\uE000", "\uFFFF",
+				new String(Character.toChars(0x10000)), new String(Character.toChars(0x1F600)),
+				new String(Character.toChars(0x1F600)) + "a", new String(Character.toChars(0x10FFFF)));
+
+		for (String a : keys)
+			for (String b : keys)
+				assertEquals(Integer.signum(compareBytes(a, b)),
+						Integer.signum(Reconciliation.compareCodePoints(a, b)));
+	}
+
+	private List<String> reconcile(Reconciliation.Key... keys) {
+		return reconciliation.reconcile(report, Arrays.asList(keys), RECENT_AFTER);
+	}
+
+	private static int compareBytes(String a, String b) {
+		byte[] x = a.getBytes(StandardCharsets.UTF_8);
+		byte[] y = b.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < Math.min(x.length, y.length); i++)
+			if (x[i] != y[i])
+				return Integer.compare(x[i] & 0xff, y[i] & 0xff);
+		return Integer.compare(x.length, y.length);
+	}
+
+	private static Reconciliation.Key object(String key, Date lastModified) {
+		return new Reconciliation.Key(key, Reconciliation.Source.OBJECT, 10, lastModified);
+	}
+
+	private static Reconciliation.Key reference(String key) {
+		return new Reconciliation.Key(key, Reconciliation.Source.REFERENCE, 0, null);
+	}
+
+	private static Reconciliation.Key indexed(String key) {
+		return new Reconciliation.Key(key, Reconciliation.Source.INDEXED, 0, null);
+	}
+
+	private static Reconciliation.Key queued(String key) {
+		return new Reconciliation.Key(key, Reconciliation.Source.QUEUED, 0, null);
+	}
+
+}
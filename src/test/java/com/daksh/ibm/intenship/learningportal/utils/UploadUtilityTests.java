@@ -0,0 +1,88 @@
+package com.daksh.ibm.intenship.learningportal.utils;
+
+import com.daksh.ibm.intenship.learningportal.properties.S3ClientConfigurationProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadUtilityTests {
+
+	private static final int MIB = 1024 * 1024;
+
+	private final S3ClientConfigurationProperties s3props = new S3ClientConfigurationProperties();
+
+	private final UploadUtility uploadUtility = new UploadUtility(null, s3props, null);
+
+	@Test
+	void partSizeFitsTheFileIntoTheMaxParts() {
+		assertEquals(5 * MIB, uploadUtility.partSize(-1));
+		assertEquals(5 * MIB, uploadUtility.partSize(0));
+		assertEquals(5 * MIB, uploadUtility.partSize(1));
+		assertEquals(5 * MIB, uploadUtility.partSize(10_000L * 5 * MIB));
+		// one byte more no longer fits 10,000 parts of 5 MiB
+		assertEquals(6 * MIB, uploadUtility.partSize(10_000L * 5 * MIB + 1));
+		assertEquals(128 * MIB, uploadUtility.partSize(10_000L * 128 * MIB));
+
+		for (long length : new long[]{1, 5L * MIB + 1, 50_000L * MIB + 1, 100_000L * MIB, 1_000_000L * MIB + 7,
+				10_000L * 128 * MIB}) {
+			long partSize = uploadUtility.partSize(length);
+			assertTrue((length + partSize - 1) / partSize <= 10_000, "parts for " + length);
+			assertEquals(0, partSize % MIB);
+		}
+	}
+
+	@Test
+	void partSizeIsCappedBeyondTheLargestUpload() {
+		// Larger files cannot be uploaded in 10,000 parts of at most 128 MiB
+		assertEquals(128 * MIB, uploadUtility.partSize(10_000L * 128 * MIB + 1));
+	}
+
+	@Test
+	void partsOfUnknownLengthDoubleEveryGrowthInterval() {
+		UploadUtility.UploadState uploadState = new UploadUtility.UploadState("bucket", "key");
+		uploadState.partSize = uploadUtility.partSize(-1);
+		uploadState.growPartSize = true;
+		DataBuffer mebibyte = new DefaultDataBufferFactory().wrap(new byte[MIB]);
+
+		List<Long> partSizes = uploadUtility.bufferParts(uploadState, Flux.just(mebibyte).repeat())
+				.take(10_000)
+				.map(Utility::readableByteCount)
+				.collectList()
+				.block();
+
+		assertEquals(10_000, partSizes.size());
+		long total = 0;
+		for (int partNumber = 1; partNumber <= partSizes.size(); partNumber++) {
+			long expected = Math.min(5L * MIB << ((partNumber - 1) / 1000), 128 * MIB);
+			assertEquals(expected, (long) partSizes.get(partNumber - 1));
+			total += expected;
+		}
+		assertEquals(5 * MIB, (long) partSizes.get(999));
+		assertEquals(10 * MIB, (long) partSizes.get(1000));
+		assertEquals(80 * MIB, (long) partSizes.get(4999));
+		assertEquals(128 * MIB, (long) partSizes.get(5000));
+		assertEquals(128 * MIB, (long) partSizes.get(9999));
+		// the largest object an upload of unknown length can reach within 10,000 parts
+		assertEquals(795_000L * MIB, total);
+	}
+
+	@Test
+	void inFlightPartsFitTheMemoryBudget() {
+		assertEquals(8, uploadUtility.inFlightParts(new UploadUtility.UploadState("bucket", "key", "id", 5 * MIB)));
+		assertEquals(4, uploadUtility.inFlightParts(new UploadUtility.UploadState("bucket", "key", "id", 128 * MIB)));
+
+		UploadUtility.UploadState growing = new UploadUtility.UploadState("bucket", "key", "id", 5 * MIB);
+		growing.growPartSize = true;
+		assertEquals(4, uploadUtility.inFlightParts(growing));
+
+		s3props.setMultipartMaxInFlightBytes(MIB);
+		assertEquals(1, uploadUtility.inFlightParts(growing));
+	}
+
+}